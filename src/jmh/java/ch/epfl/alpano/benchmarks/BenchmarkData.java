@@ -0,0 +1,80 @@
+package ch.epfl.alpano.benchmarks;
+
+/**
+ * Gives the data read by the benchmarks. The DEM is made of the hgt (or
+ * precomputed) files of the directory given by the system property
+ * alpano.benchmark.dem if it is set, and is otherwise a synthetic relief of
+ * 10x10 tiles covering the area seen by the predefined panoramas, so that the
+ * benchmarks can run without any file.
+ *
+ * @author Niels Poulsen
+ */
+
+import java.io.File;
+
+import ch.epfl.alpano.PanoramaUserParameters;
+import ch.epfl.alpano.PredefinedPanoramas;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.HgtTileCatalog;
+import ch.epfl.alpano.dem.SyntheticDiscreteElevationModel;
+
+final class BenchmarkData {
+
+    /** The system property giving the directory of the hgt files */
+    final static String DEM_DIRECTORY = "alpano.benchmark.dem";
+
+    /** The maximum number of hgt files mapped at the same time */
+    private final static int MAPPED_TILES = 64;
+
+    /** The seed of the synthetic relief */
+    private final static long SEED = 2017;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Gives the discrete DEM of the benchmarks
+     *
+     * @return the DEM
+     */
+    static DiscreteElevationModel dem() {
+        String directory = System.getProperty(DEM_DIRECTORY);
+        return directory == null
+                ? new SyntheticDiscreteElevationModel(SEED, 3, 42,
+                        SyntheticDiscreteElevationModel.MAX_TILES)
+                : new HgtTileCatalog(new File(directory), MAPPED_TILES);
+    }
+
+    /**
+     * Gives the continuous DEM of the benchmarks
+     *
+     * @param dem
+     *            the discrete DEM
+     * @return the continuous DEM
+     */
+    static ContinuousElevationModel cem(DiscreteElevationModel dem) {
+        return new ContinuousElevationModel(dem);
+    }
+
+    /**
+     * Gives the parameters of a predefined panorama
+     *
+     * @param name
+     *            the name of the panorama, as in PredefinedPanoramas
+     * @return the parameters of the panorama
+     * @throws IllegalArgumentException
+     *             if there is no such panorama
+     */
+    static PanoramaUserParameters panorama(String name) {
+        switch (name) {
+        case "Niesen":
+            return PredefinedPanoramas.Niesen;
+        case "AlpesDuJura":
+            return PredefinedPanoramas.AlpesDuJura;
+        default:
+            throw new IllegalArgumentException("Unknown panorama " + name);
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package ch.epfl.alpano.benchmarks;
+
+/**
+ * Measures the time taken to read the elevation and the slope of a point of
+ * the continuous DEM, the innermost operations of the computation of a
+ * panorama
+ *
+ * @author Niels Poulsen
+ */
+
+import static java.lang.Math.toRadians;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElevationModelBenchmark {
+
+    /** The number of points read in turn (a power of two) */
+    private final static int POINTS = 1 << 12;
+
+    private ContinuousElevationModel cem;
+    private GeoPoint[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cem = BenchmarkData.cem(BenchmarkData.dem());
+        // Points within a degree of the Niesen, as seen by its panorama
+        Random random = new Random(2017);
+        points = new GeoPoint[POINTS];
+        for (int i = 0; i < POINTS; ++i) {
+            points[i] = new GeoPoint(
+                    toRadians(7.65 + 2 * random.nextDouble() - 1),
+                    toRadians(46.73 + 2 * random.nextDouble() - 1));
+        }
+    }
+
+    @Benchmark
+    public double elevationAt() {
+        return cem.elevationAt(nextPoint());
+    }
+
+    @Benchmark
+    public double slopeAt() {
+        return cem.slopeAt(nextPoint());
+    }
+
+    private GeoPoint nextPoint() {
+        next = (next + 1) & (POINTS - 1);
+        return points[next];
+    }
+
+}
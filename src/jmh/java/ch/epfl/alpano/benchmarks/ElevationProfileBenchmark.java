@@ -0,0 +1,83 @@
+package ch.epfl.alpano.benchmarks;
+
+/**
+ * Measures the time taken to build the elevation profile of a column of a
+ * panorama and to read its points
+ *
+ * @author Niels Poulsen
+ */
+
+import static java.lang.Math.toRadians;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElevationProfileBenchmark {
+
+    /** The length of the profiles, as in the predefined panoramas */
+    private final static double LENGTH = 300_000;
+
+    /** The number of distances read in turn (a power of two) */
+    private final static int DISTANCES = 1 << 12;
+
+    private final static GeoPoint NIESEN = new GeoPoint(toRadians(7.65),
+            toRadians(46.73));
+
+    private ContinuousElevationModel cem;
+    private ElevationProfile profile;
+    private double[] distances;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cem = BenchmarkData.cem(BenchmarkData.dem());
+        profile = new ElevationProfile(cem, NIESEN, toRadians(180), LENGTH);
+        Random random = new Random(2017);
+        distances = new double[DISTANCES];
+        for (int i = 0; i < DISTANCES; ++i) {
+            distances[i] = random.nextDouble() * LENGTH;
+        }
+    }
+
+    @Benchmark
+    public ElevationProfile newProfile() {
+        return new ElevationProfile(cem, NIESEN, toRadians(180), LENGTH);
+    }
+
+    @Benchmark
+    public GeoPoint positionAt() {
+        return profile.positionAt(nextDistance());
+    }
+
+    @Benchmark
+    public double elevationAt() {
+        return profile.elevationAt(nextDistance());
+    }
+
+    private double nextDistance() {
+        next = (next + 1) & (DISTANCES - 1);
+        return distances[next];
+    }
+
+}
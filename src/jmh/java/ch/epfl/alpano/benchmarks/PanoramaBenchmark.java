@@ -0,0 +1,79 @@
+package ch.epfl.alpano.benchmarks;
+
+/**
+ * Measures the time taken to compute the predefined panoramas and to paint
+ * their image as the service does, on a pool using all of the processors
+ *
+ * @author Niels Poulsen
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.alpanoreact.service.Alpano;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
+import ch.epfl.alpano.image.ImageRenderer;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PanoramaBenchmark {
+
+    @Param({ "Niesen", "AlpesDuJura" })
+    public String panorama;
+
+    private ForkJoinPool pool;
+    private PanoramaComputer computer;
+    private ImageRenderer renderer;
+    private PanoramaParameters parameters;
+    private Panorama computed;
+
+    @Setup
+    public void setUp() {
+        DiscreteElevationModel dem = BenchmarkData.dem();
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        computer = new PanoramaComputer(BenchmarkData.cem(dem),
+                new MaxElevationPyramid(dem), pool);
+        renderer = new ImageRenderer(pool);
+        parameters = BenchmarkData.panorama(panorama)
+                .panoramaDisplayParameters();
+        computed = computer.computePanorama(parameters);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Panorama computePanorama() {
+        return computer.computePanorama(parameters);
+    }
+
+    @Benchmark
+    public int[] paint() {
+        return renderer.render(Alpano.getDefaultImagePainter(computed),
+                parameters.width(), parameters.height());
+    }
+
+}
@@ -0,0 +1,96 @@
+package ch.epfl.alpano.benchmarks;
+
+/**
+ * Measures the time taken to find the point of the ground hit by a ray, with
+ * the search of the first interval containing a root and its refinement by
+ * bisection
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.PanoramaComputer.DX;
+import static java.lang.Math.toRadians;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.RayToGroundDistance;
+import ch.epfl.alpano.dem.ElevationProfile;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RootFindingBenchmark {
+
+    /** The length of the profile, as in the predefined panoramas */
+    private final static double LENGTH = 300_000;
+
+    /** The elevation of the observer, as in the Niesen panorama */
+    private final static double OBSERVER_ELEVATION = 600;
+
+    /** The precision of the refinement, as in PanoramaComputer */
+    private final static double EPSILON = 4;
+
+    /** The slope of the ray, slightly above the horizon */
+    private final static double RAY_SLOPE = 0.01;
+
+    private RayToGroundDistance ray;
+    private DoubleUnaryOperator rayFunction;
+    private double intervalStart;
+
+    @Setup
+    public void setUp() {
+        ElevationProfile profile = new ElevationProfile(
+                BenchmarkData.cem(BenchmarkData.dem()),
+                new GeoPoint(toRadians(7.65), toRadians(46.73)),
+                toRadians(180), LENGTH);
+        ray = PanoramaComputer.rayToGroundEvaluator(profile,
+                OBSERVER_ELEVATION, RAY_SLOPE);
+        rayFunction = PanoramaComputer.rayToGroundDistance(profile,
+                OBSERVER_ELEVATION, RAY_SLOPE);
+        intervalStart = Math2.firstIntervalContainingRoot(ray, 0, LENGTH, DX);
+        if (intervalStart > LENGTH - DX) {
+            throw new IllegalStateException("The ray does not hit the ground");
+        }
+    }
+
+    @Benchmark
+    public double firstIntervalContainingRoot() {
+        return Math2.firstIntervalContainingRoot(ray, 0, LENGTH, DX);
+    }
+
+    @Benchmark
+    public double firstIntervalContainingRootOfFunction() {
+        return Math2.firstIntervalContainingRoot(rayFunction, 0, LENGTH, DX);
+    }
+
+    @Benchmark
+    public double improveRoot() {
+        return Math2.improveRoot(ray, intervalStart, intervalStart + DX,
+                EPSILON);
+    }
+
+    @Benchmark
+    public double improveRootOfFunction() {
+        return Math2.improveRoot(rayFunction, intervalStart,
+                intervalStart + DX, EPSILON);
+    }
+
+}
@@ -0,0 +1,61 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents the computation of a range of columns of a panorama, which is
+ * split in two halves (computed in parallel) until it is small enough
+ *
+ * @author Niels Poulsen
+ */
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+final class ColumnsTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of columns computed by a single task, below which the columns
+     * are not split among threads anymore
+     */
+    private final static int COLUMNS_PER_TASK = 4;
+
+    /** The computation of a single column */
+    private final IntConsumer column_;
+
+    /** The index of the first column of the range */
+    private final int from_;
+
+    /** The index following the last column of the range */
+    private final int to_;
+
+    /**
+     * Creates the computation of the columns [from, to[ of a panorama
+     * 
+     * @param column
+     *            the computation of a single column
+     * @param from
+     *            the index of the first column (included)
+     * @param to
+     *            the index of the last column (excluded)
+     */
+    ColumnsTask(IntConsumer column, int from, int to) {
+        column_ = column;
+        from_ = from;
+        to_ = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to_ - from_ <= COLUMNS_PER_TASK) {
+            for (int x = from_; x < to_; ++x) {
+                column_.accept(x);
+            }
+        } else {
+            int middle = (from_ + to_) >>> 1;
+            invokeAll(new ColumnsTask(column_, from_, middle),
+                    new ColumnsTask(column_, middle, to_));
+        }
+    }
+
+}
@@ -0,0 +1,96 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents the progress of the computation of a panorama, which can be read
+ * and cancelled by other threads while it runs. A cancelled computation stops
+ * before computing its next column.
+ *
+ * @author Niels Poulsen
+ */
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ComputationMonitor {
+
+    /** The number of columns computed so far */
+    private final AtomicInteger completedColumns_ = new AtomicInteger();
+
+    /** The number of columns of the panorama, 0 until the computation starts */
+    private volatile int totalColumns_;
+
+    /** Whether the computation has been cancelled */
+    private volatile boolean cancelled_;
+
+    /** Cancels the computation, which stops before its next column */
+    public void cancel() {
+        cancelled_ = true;
+    }
+
+    /**
+     * Checks whether the computation has been cancelled
+     *
+     * @return true if it has been cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled_;
+    }
+
+    /**
+     * Gives the number of columns computed so far
+     *
+     * @return the number of computed columns
+     */
+    public int completedColumns() {
+        return completedColumns_.get();
+    }
+
+    /**
+     * Gives the number of columns of the panorama
+     *
+     * @return the number of columns, or 0 if the computation has not started
+     *         yet
+     */
+    public int totalColumns() {
+        return totalColumns_;
+    }
+
+    /**
+     * Gives the fraction of the columns computed so far
+     *
+     * @return the progress, between 0 and 1
+     */
+    public double progress() {
+        int total = totalColumns_;
+        return total == 0 ? 0 : (double) completedColumns() / total;
+    }
+
+    /**
+     * Marks the start of the computation
+     *
+     * @param columns
+     *            the number of columns of the panorama
+     */
+    void start(int columns) {
+        totalColumns_ = columns;
+    }
+
+    /**
+     * Stops the computation if it has been cancelled
+     *
+     * @throws CancellationException
+     *             if it has been cancelled
+     */
+    void checkCancelled() {
+        if (cancelled_) {
+            throw new CancellationException(
+                    "The computation of the panorama was cancelled");
+        }
+    }
+
+    /** Marks the computation of a column */
+    void columnCompleted() {
+        completedColumns_.incrementAndGet();
+    }
+
+}
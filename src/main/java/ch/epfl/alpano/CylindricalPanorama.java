@@ -0,0 +1,396 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents the full 360° panorama seen by an observer, at a given angular
+ * resolution, from which the panoramas of the same observer with any center
+ * azimuth are cropped. Its columns are computed and stored lazily, the first
+ * time a cropped panorama needs them, so that panning around the observer only
+ * copies the columns already computed.
+ * <p>
+ * Several panoramas can be cropped at the same time: each column is computed
+ * by the first crop needing it, without holding any lock, and the other crops
+ * needing it wait for that computation (or compute it themselves if that
+ * crop was cancelled).
+ * <p>
+ * Its columns are equally spaced over the whole circle, the first one facing
+ * north, and the columns of a cropped panorama are the ones nearest to their
+ * azimuth. The angular resolution of a cropped panorama must thus be close
+ * enough to the one of this for the drift along its width and height to stay
+ * below half a column.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Azimuth.canonicalize;
+import static ch.epfl.alpano.Math2.PI2;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class CylindricalPanorama {
+
+    /** The number of bytes taken by each point of a cylindrical panorama */
+    final static int BYTES_PER_POINT = 5 * Float.BYTES;
+
+    /** The computer of the columns */
+    private final PanoramaComputer computer_;
+
+    /** The position of the observer */
+    private final GeoPoint observerPosition_;
+
+    /** The elevation of the observer (in meters) */
+    private final int observerElevation_;
+
+    /** The maximum distance of the panorama (in meters) */
+    private final int maxDistance_;
+
+    /** The number of columns over the whole circle */
+    private final int columns_;
+
+    /** The number of rows */
+    private final int height_;
+
+    /** The angle (in radians) between two neighbouring columns */
+    private final double delta_;
+
+    /**
+     * The computation of each column, null for the ones no crop has needed
+     * yet (or whose computation failed)
+     */
+    private final AtomicReferenceArray<CompletableFuture<Column>> computations_;
+
+    /** The number of columns computed */
+    private final AtomicInteger computedColumns_ = new AtomicInteger();
+
+    /**
+     * Creates the panorama seen by an observer over the whole circle, without
+     * computing any of its columns
+     *
+     * @param computer
+     *            the computer of the columns
+     * @param observerPosition
+     *            the position of the observer
+     * @param observerElevation
+     *            the elevation of the observer (in meters)
+     * @param maxDistance
+     *            the maximum distance of the panorama (in meters)
+     * @param columns
+     *            the number of columns over the whole circle
+     * @param height
+     *            the number of rows
+     * @throws NullPointerException
+     *             if the computer or the position is null
+     * @throws IllegalArgumentException
+     *             if the maximum distance is not strictly positive, or if
+     *             there are less than two columns or two rows
+     */
+    public CylindricalPanorama(PanoramaComputer computer,
+            GeoPoint observerPosition, int observerElevation, int maxDistance,
+            int columns, int height) {
+        computer_ = requireNonNull(computer, "The computer given is null");
+        observerPosition_ = requireNonNull(observerPosition,
+                "The position of the observer is null");
+        checkArgument(maxDistance > 0,
+                "The maximum distance is not strictly positive");
+        checkArgument(columns > 1 && height > 1,
+                "There are less than two columns or rows");
+        observerElevation_ = observerElevation;
+        maxDistance_ = maxDistance;
+        columns_ = columns;
+        height_ = height;
+        delta_ = PI2 / columns;
+        computations_ = new AtomicReferenceArray<>(columns);
+    }
+
+    /**
+     * Gives the number of columns over the whole circle needed to crop the
+     * panoramas with the same angular resolution as a given one
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @return the number of columns
+     */
+    public static int columnsFor(PanoramaParameters parameters) {
+        double delta = parameters.horizontalFieldOfView()
+                / (parameters.width() - 1);
+        return max(2, (int) Math.round(PI2 / delta));
+    }
+
+    /**
+     * Checks whether a panorama can be cropped from this
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @return true if the panorama has the same observer, maximum distance
+     *         and height as this, and an angular resolution close enough to
+     *         the one of this
+     */
+    public boolean covers(PanoramaParameters parameters) {
+        double delta = parameters.horizontalFieldOfView()
+                / (parameters.width() - 1);
+        int span = max(parameters.width(), parameters.height());
+        return parameters.observerPosition().longitude() == observerPosition_
+                .longitude()
+                && parameters.observerPosition()
+                        .latitude() == observerPosition_.latitude()
+                && parameters.observerElevation() == observerElevation_
+                && parameters.maxDistance() == maxDistance_
+                && parameters.height() == height_
+                && abs(delta - delta_) * span <= delta_ / 2;
+    }
+
+    /**
+     * Crops a panorama out of this, computing the columns it needs which have
+     * not been computed yet, and waiting for the ones being computed by
+     * another crop
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @return the panorama
+     * @throws IllegalArgumentException
+     *             if the panorama cannot be cropped from this
+     */
+    public Panorama crop(PanoramaParameters parameters) {
+        return crop(parameters, new ComputationMonitor());
+    }
+
+    /**
+     * Crops a panorama out of this, as crop(parameters) does, reporting the
+     * columns of this it needs to a monitor and stopping as soon as it is
+     * cancelled. The columns computed or being computed by other crops are
+     * reported right away, the other ones as soon as they are computed.
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param monitor
+     *            the monitor of the crop
+     * @return the panorama
+     * @throws CancellationException
+     *             if the crop was cancelled before all of the columns it
+     *             needs were computed
+     * @throws IllegalArgumentException
+     *             if the panorama cannot be cropped from this
+     * @throws NullPointerException
+     *             if the monitor is null
+     */
+    public Panorama crop(PanoramaParameters parameters,
+            ComputationMonitor monitor) {
+        requireNonNull(monitor, "The monitor given is null");
+        checkArgument(covers(parameters),
+                "The panorama cannot be cropped from this");
+        int width = parameters.width();
+        int[] columns = new int[width];
+        for (int x = 0; x < width; ++x) {
+            columns[x] = Math.floorMod(
+                    (int) Math.round(parameters.azimuthForX(x) / delta_),
+                    columns_);
+        }
+        fill(columns, monitor);
+
+        Panorama.Builder builder = new Panorama.Builder(parameters);
+        for (int x = 0; x < width; ++x) {
+            Column column = column(columns[x], monitor);
+            for (int y = 0; y < height_; ++y) {
+                builder.setDistanceAt(x, y, column.distances_[y])
+                        .setLongitudeAt(x, y, column.longitudes_[y])
+                        .setLatitudeAt(x, y, column.latitudes_[y])
+                        .setElevationAt(x, y, column.elevations_[y])
+                        .setSlopeAt(x, y, column.slopes_[y]);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gives a column needed by a crop, waiting for the crop computing it if
+     * any, and computing it if that crop was cancelled
+     *
+     * @param c
+     *            the index of the column
+     * @param monitor
+     *            the monitor of the crop needing it
+     * @return the column
+     * @throws CancellationException
+     *             if the crop needing it was cancelled
+     */
+    private Column column(int c, ComputationMonitor monitor) {
+        while (true) {
+            CompletableFuture<Column> computation = computations_.get(c);
+            if (computation == null) {
+                // Released by the crop computing it, which was cancelled or
+                // failed; it was already reported to the monitor
+                monitor.checkCancelled();
+                fill(new int[] { c }, new ComputationMonitor());
+                continue;
+            }
+            try {
+                return computation.join();
+            } catch (CancellationException e) {
+                monitor.checkCancelled();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : e;
+            }
+        }
+    }
+
+    /**
+     * Claims the columns among some given ones which no other crop computes
+     * yet, and computes them by runs of neighbouring columns. If a run fails,
+     * the computations of all of the columns claimed and not computed yet
+     * fail with it, and the columns can be claimed again by the next crops.
+     *
+     * @param columns
+     *            the indices of the columns, possibly repeated
+     * @param monitor
+     *            the monitor started with the number of distinct columns,
+     *            the ones not claimed being reported right away
+     * @throws CancellationException
+     *             if the monitor was cancelled before all of the claimed
+     *             columns were computed
+     */
+    private void fill(int[] columns, ComputationMonitor monitor) {
+        boolean[] needed = new boolean[columns_];
+        boolean[] claimed = new boolean[columns_];
+        int distinct = 0;
+        for (int column : columns) {
+            if (!needed[column]) {
+                needed[column] = true;
+                ++distinct;
+                claimed[column] = computations_.get(column) == null
+                        && computations_.compareAndSet(column, null,
+                                new CompletableFuture<>());
+            }
+        }
+        monitor.start(distinct);
+        for (int c = 0; c < columns_; ++c) {
+            if (needed[c] && !claimed[c]) {
+                monitor.columnCompleted();
+            }
+        }
+        try {
+            int start = 0;
+            while (start < columns_) {
+                if (!claimed[start]) {
+                    ++start;
+                    continue;
+                }
+                int end = start + 1;
+                while (end < columns_ && claimed[end]) {
+                    ++end;
+                }
+                computeRun(start, end, monitor);
+                start = end;
+            }
+        } catch (Throwable t) {
+            for (int c = 0; c < columns_; ++c) {
+                CompletableFuture<Column> computation = computations_.get(c);
+                if (claimed[c] && !computation.isDone()) {
+                    computations_.set(c, null);
+                    computation.completeExceptionally(t);
+                }
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * Computes a run of neighbouring columns claimed by the calling thread as
+     * a panorama of its own, completing their computations
+     *
+     * @param from
+     *            the index of the first column (inclusive)
+     * @param to
+     *            the index of the last column (exclusive)
+     * @param monitor
+     *            the monitor to which the claimed columns are reported
+     */
+    private void computeRun(int from, int to, ComputationMonitor monitor) {
+        // A panorama has at least two columns, so a single one is computed
+        // with one of its neighbours, which is kept if no crop claimed it
+        int claimedFrom = from, claimedTo = to;
+        if (to - from == 1) {
+            from = min(from, columns_ - 2);
+            to = from + 2;
+        }
+        int width = to - from;
+        double fieldOfView = delta_ * (width - 1);
+        PanoramaParameters parameters = new PanoramaParameters(
+                observerPosition_, observerElevation_,
+                canonicalize(delta_ * from + fieldOfView / 2), fieldOfView,
+                maxDistance_, width, height_);
+        int first = from, claimedFirst = claimedFrom, claimedEnd = claimedTo;
+        Panorama run = computer_.computePanorama(parameters, monitor,
+                x -> claimedFirst <= first + x && first + x < claimedEnd);
+
+        for (int x = 0; x < width; ++x) {
+            int c = from + x;
+            Column column = new Column(run, x, height_);
+            boolean claimed = claimedFrom <= c && c < claimedTo;
+            if (claimed) {
+                computations_.get(c).complete(column);
+            } else if (!computations_.compareAndSet(c, null,
+                    CompletableFuture.completedFuture(column))) {
+                continue;
+            }
+            computedColumns_.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gives the number of columns over the whole circle
+     *
+     * @return the number of columns
+     */
+    public int columns() {
+        return columns_;
+    }
+
+    /**
+     * Gives the number of rows
+     *
+     * @return the height of this
+     */
+    public int height() {
+        return height_;
+    }
+
+    /**
+     * Gives the number of columns already computed
+     *
+     * @return the number of computed columns
+     */
+    public int computedColumns() {
+        return computedColumns_.get();
+    }
+
+    /** Holds the attributes of the points of a computed column */
+    private final static class Column {
+        private final float[] distances_, longitudes_, latitudes_,
+                elevations_, slopes_;
+
+        private Column(Panorama run, int x, int height) {
+            distances_ = new float[height];
+            longitudes_ = new float[height];
+            latitudes_ = new float[height];
+            elevations_ = new float[height];
+            slopes_ = new float[height];
+            for (int y = 0; y < height; ++y) {
+                distances_[y] = run.distanceAt(x, y);
+                longitudes_[y] = run.longitudeAt(x, y);
+                latitudes_[y] = run.latitudeAt(x, y);
+                elevations_[y] = run.elevationAt(x, y);
+                slopes_[y] = run.slopeAt(x, y);
+            }
+        }
+    }
+
+}
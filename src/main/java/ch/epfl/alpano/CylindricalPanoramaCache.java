@@ -0,0 +1,174 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents a cache of the 360° panoramas of the observers, from which the
+ * panoramas with any center azimuth are cropped. The least recently used
+ * 360° panoramas are evicted when the cache is full, and the panoramas whose
+ * 360° panorama would not fit in the cache are computed directly.
+ * <p>
+ * A cache can be used by several threads at the same time.
+ *
+ * @author Niels Poulsen
+ */
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+
+public final class CylindricalPanoramaCache {
+
+    /** The computer of the panoramas */
+    private final PanoramaComputer computer_;
+
+    /** The 360° panoramas, by observer, resolution and height */
+    private final LruCache<Key, CylindricalPanorama> panoramas_;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param computer
+     *            the computer of the panoramas
+     * @param maxBytes
+     *            the maximum number of bytes taken by the 360° panoramas of
+     *            the cache
+     * @throws NullPointerException
+     *             if the computer is null
+     * @throws IllegalArgumentException
+     *             if the maximum number of bytes is negative
+     */
+    public CylindricalPanoramaCache(PanoramaComputer computer,
+            long maxBytes) {
+        computer_ = requireNonNull(computer, "The computer given is null");
+        panoramas_ = new LruCache<>(maxBytes, p -> weight(p.columns(),
+                p.height()));
+    }
+
+    /**
+     * Gives a panorama, cropped from the 360° panorama of its observer
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @return the panorama
+     */
+    public Panorama panorama(PanoramaParameters parameters) {
+        return panorama(parameters, new ComputationMonitor());
+    }
+
+    /**
+     * Gives a panorama, cropped from the 360° panorama of its observer,
+     * reporting the columns computed or reused to a monitor and stopping as
+     * soon as it is cancelled
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param monitor
+     *            the monitor of the computation
+     * @return the panorama
+     * @throws CancellationException
+     *             if the computation was cancelled before all of the columns
+     *             were computed
+     * @throws NullPointerException
+     *             if the monitor is null
+     */
+    public Panorama panorama(PanoramaParameters parameters,
+            ComputationMonitor monitor) {
+        int columns = CylindricalPanorama.columnsFor(parameters);
+        if (weight(columns, parameters.height()) > panoramas_.capacity()) {
+            return computer_.computePanorama(parameters, monitor);
+        }
+
+        Key key = new Key(parameters, columns);
+        CylindricalPanorama cylinder;
+        synchronized (panoramas_) {
+            cylinder = panoramas_.get(key);
+            if (cylinder == null) {
+                cylinder = new CylindricalPanorama(computer_,
+                        parameters.observerPosition(),
+                        parameters.observerElevation(),
+                        parameters.maxDistance(), columns,
+                        parameters.height());
+                panoramas_.put(key, cylinder);
+            }
+        }
+        return cylinder.covers(parameters) ? cylinder.crop(parameters, monitor)
+                : computer_.computePanorama(parameters, monitor);
+    }
+
+    /**
+     * Gives the number of 360° panoramas in the cache
+     *
+     * @return the number of 360° panoramas
+     */
+    public int size() {
+        return panoramas_.size();
+    }
+
+    /**
+     * Gives the number of panoramas cropped from a 360° panorama already in
+     * the cache
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return panoramas_.hits();
+    }
+
+    /**
+     * Gives the number of panoramas for which a new 360° panorama was created
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return panoramas_.misses();
+    }
+
+    /**
+     * Gives the number of bytes taken by a 360° panorama once all of its
+     * columns are computed, the bound by which it is weighed in the cache as
+     * its columns are only stored as they are computed
+     *
+     * @param columns
+     *            the number of columns of the panorama
+     * @param height
+     *            the number of rows of the panorama
+     * @return the number of bytes
+     */
+    private static long weight(int columns, int height) {
+        return (long) CylindricalPanorama.BYTES_PER_POINT * columns * height;
+    }
+
+    /** Identifies a 360° panorama by its observer, resolution and height */
+    private final static class Key {
+        private final double longitude_, latitude_;
+        private final int elevation_, maxDistance_, columns_, height_;
+
+        private Key(PanoramaParameters parameters, int columns) {
+            longitude_ = parameters.observerPosition().longitude();
+            latitude_ = parameters.observerPosition().latitude();
+            elevation_ = parameters.observerElevation();
+            maxDistance_ = parameters.maxDistance();
+            columns_ = columns;
+            height_ = parameters.height();
+        }
+
+        @Override
+        public boolean equals(Object thatO) {
+            if (!(thatO instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) thatO;
+            return longitude_ == k.longitude_ && latitude_ == k.latitude_
+                    && elevation_ == k.elevation_
+                    && maxDistance_ == k.maxDistance_
+                    && columns_ == k.columns_ && height_ == k.height_;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(longitude_, latitude_, elevation_,
+                    maxDistance_, columns_, height_);
+        }
+    }
+
+}
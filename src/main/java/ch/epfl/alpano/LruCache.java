@@ -0,0 +1,176 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents a cache bounded by the total weight (e.g. the size in bytes) of
+ * its values, which evicts the least recently used ones when it is full. It
+ * keeps track of its hits, misses and evictions, and can be used by several
+ * threads at the same time.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+public final class LruCache<K, V> {
+
+    /** The values of the cache, from the least to the most recently used */
+    private final LinkedHashMap<K, V> values_;
+
+    /** The function giving the weight of a value */
+    private final ToLongFunction<? super V> weigher_;
+
+    /** The maximum total weight of the values of the cache */
+    private final long capacity_;
+
+    /** The total weight of the values of the cache */
+    private long weight_;
+
+    /** The number of lookups which found their value */
+    private long hits_;
+
+    /** The number of lookups which did not find their value */
+    private long misses_;
+
+    /** The number of values evicted to make room for new ones */
+    private long evictions_;
+
+    /**
+     * Creates an empty cache
+     *
+     * @param capacity
+     *            the maximum total weight of the values of the cache
+     * @param weigher
+     *            the function giving the weight of a value, which must not
+     *            change while the value is in the cache
+     * @throws IllegalArgumentException
+     *             if the capacity is negative
+     * @throws NullPointerException
+     *             if the weigher is null
+     */
+    public LruCache(long capacity, ToLongFunction<? super V> weigher) {
+        checkArgument(capacity >= 0, "The capacity of the cache is negative");
+        capacity_ = capacity;
+        weigher_ = requireNonNull(weigher, "The weigher is null");
+        values_ = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Gives the value associated to a key, and marks it as the most recently
+     * used one
+     *
+     * @param key
+     *            the key
+     * @return the value associated to the key, or null if it is not in the
+     *         cache
+     */
+    public synchronized V get(K key) {
+        V value = values_.get(key);
+        if (value == null) {
+            ++misses_;
+        } else {
+            ++hits_;
+        }
+        return value;
+    }
+
+    /**
+     * Associates a value to a key, evicting the least recently used values
+     * until the total weight of the cache is below its capacity. A value which
+     * is heavier than the capacity is not stored.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @throws NullPointerException
+     *             if the key or the value is null
+     */
+    public synchronized void put(K key, V value) {
+        requireNonNull(key, "The key is null");
+        requireNonNull(value, "The value is null");
+        long weight = weigher_.applyAsLong(value);
+        V previous = values_.remove(key);
+        if (previous != null) {
+            weight_ -= weigher_.applyAsLong(previous);
+        }
+        if (weight > capacity_) {
+            return;
+        }
+
+        values_.put(key, value);
+        weight_ += weight;
+        Iterator<Map.Entry<K, V>> eldest = values_.entrySet().iterator();
+        while (weight_ > capacity_) {
+            weight_ -= weigher_.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+            ++evictions_;
+        }
+    }
+
+    /** Removes all of the values of the cache */
+    public synchronized void clear() {
+        values_.clear();
+        weight_ = 0;
+    }
+
+    /**
+     * Gives the number of values in the cache
+     *
+     * @return the number of values in the cache
+     */
+    public synchronized int size() {
+        return values_.size();
+    }
+
+    /**
+     * Gives the total weight of the values of the cache
+     *
+     * @return the total weight of the values of the cache
+     */
+    public synchronized long weight() {
+        return weight_;
+    }
+
+    /**
+     * Gives the maximum total weight of the values of the cache
+     *
+     * @return the capacity of the cache
+     */
+    public long capacity() {
+        return capacity_;
+    }
+
+    /**
+     * Gives the number of lookups which found their value
+     *
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return hits_;
+    }
+
+    /**
+     * Gives the number of lookups which did not find their value
+     *
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses_;
+    }
+
+    /**
+     * Gives the number of values evicted to make room for new ones
+     *
+     * @return the number of evictions
+     */
+    public synchronized long evictions() {
+        return evictions_;
+    }
+
+}
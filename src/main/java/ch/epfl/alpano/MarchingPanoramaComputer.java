@@ -0,0 +1,257 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents a panorama calculator which, unlike PanoramaComputer, walks only
+ * once along the elevation profile of each column. The ground is sampled every
+ * DX meters, and at each step all of the rows whose ray goes below the ground
+ * in between the two samples are resolved, from the lowest to the highest. The
+ * cost of a column is thus proportional to maxDistance / DX + height instead
+ * of maxDistance / DX * height.
+ * <p>
+ * The bottom row of each column is computed exactly as by PanoramaComputer.
+ * The other rows are searched on intervals aligned on multiples of DX instead
+ * of on the point hit by the row below, so both calculators give the same
+ * point, up to EPSILON meters of horizontal distance, whenever the ray enters
+ * the ground in the same interval of DX meters. They can only differ more for
+ * rays that graze a ridge thinner than DX, which one of them can miss
+ * entirely.
+ * <p>
+ * A calculator created with a parallelism has its own pool, which is shut
+ * down when it is closed.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Math2.improveRoot;
+import static ch.epfl.alpano.PanoramaComputer.DX;
+import static ch.epfl.alpano.PanoramaComputer.EPSILON;
+import static ch.epfl.alpano.PanoramaComputer.TRUE_RADIUS;
+import static ch.epfl.alpano.PanoramaComputer.rayToGroundEvaluator;
+import static ch.epfl.alpano.PanoramaComputer.setSample;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.tan;
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+
+public final class MarchingPanoramaComputer implements AutoCloseable {
+
+    /** The continuous elevation representing the earth's surface */
+    private final ContinuousElevationModel dem_;
+
+    /**
+     * The pool in which the columns of a panorama are computed, null if they
+     * are computed sequentially
+     */
+    private final ForkJoinPool pool_;
+
+    /** Whether the pool was created by this, and is shut down when closed */
+    private final boolean ownsPool_;
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama one after the other
+     *
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @throws NullPointerException
+     *             if the CEM is null
+     */
+    public MarchingPanoramaComputer(ContinuousElevationModel dem) {
+        this(dem, 1);
+    }
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama in parallel, in a pool of its own shut down when it is closed
+     *
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param parallelism
+     *            the number of threads computing the columns of a panorama (1
+     *            to compute them sequentially)
+     * @throws NullPointerException
+     *             if the CEM is null
+     * @throws IllegalArgumentException
+     *             if the parallelism is not strictly positive
+     */
+    public MarchingPanoramaComputer(ContinuousElevationModel dem,
+            int parallelism) {
+        this(requireNonNull(dem, "The CEM given is null"),
+                ownPool(parallelism), true);
+    }
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama in a given pool, possibly shared with other computations. The
+     * pool is not shut down by this.
+     *
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param pool
+     *            the pool in which the columns of a panorama are computed
+     * @throws NullPointerException
+     *             if the CEM or the pool is null
+     */
+    public MarchingPanoramaComputer(ContinuousElevationModel dem,
+            ForkJoinPool pool) {
+        this(requireNonNull(dem, "The CEM given is null"),
+                requireNonNull(pool, "The pool given is null"), false);
+    }
+
+    /**
+     * Creates a new panorama calculator from arguments already checked
+     *
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param pool
+     *            the pool in which the columns are computed, or null
+     * @param ownsPool
+     *            whether the pool is shut down when this is closed
+     */
+    private MarchingPanoramaComputer(ContinuousElevationModel dem,
+            ForkJoinPool pool, boolean ownsPool) {
+        dem_ = dem;
+        pool_ = pool;
+        ownsPool_ = ownsPool && pool != null;
+    }
+
+    /**
+     * Creates the pool of a panorama calculator computing its columns in
+     * parallel
+     *
+     * @param parallelism
+     *            the number of threads of the pool
+     * @return the pool, or null if the parallelism is 1
+     * @throws IllegalArgumentException
+     *             if the parallelism is not strictly positive
+     */
+    private static ForkJoinPool ownPool(int parallelism) {
+        checkArgument(parallelism > 0,
+                "The parallelism is not strictly positive");
+        return parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Shuts down the pool created by this, if any. A pool given to this is
+     * left running.
+     */
+    @Override
+    public void close() {
+        if (ownsPool_) {
+            pool_.shutdown();
+        }
+    }
+
+    /**
+     * Creates a new panorama based on it's parameters
+     *
+     * @param parameters
+     *            the parameters used to create the panorama
+     * @return a new panorama
+     */
+    public Panorama computePanorama(PanoramaParameters parameters) {
+        Panorama.Builder builder = new Panorama.Builder(parameters);
+        IntConsumer column = x -> computeColumn(parameters, builder, x);
+
+        if (pool_ == null) {
+            for (int x = 0; x < parameters.width(); ++x) {
+                column.accept(x);
+            }
+        } else {
+            pool_.invoke(new ColumnsTask(column, 0, parameters.width()));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Computes all of the points of a column of a panorama in a single walk
+     * along its elevation profile
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @param builder
+     *            the builder in which the points are stored
+     * @param x
+     *            the index of the column
+     */
+    private void computeColumn(PanoramaParameters parameters,
+            Panorama.Builder builder, int x) {
+        int maxDistance = parameters.maxDistance();
+        double observerElevation = parameters.observerElevation();
+        ElevationProfile profile = new ElevationProfile(dem_,
+                parameters.observerPosition(), parameters.azimuthForX(x),
+                maxDistance);
+
+        // The row being searched, its altitude and the slope of its ray
+        int y = parameters.height() - 1;
+        double altitude = parameters.altitudeForY(y);
+        double raySlope = tan(altitude);
+
+        // The distance at which the previous row hit the ground
+        double previousPosition = 0;
+
+        // The bounds of the current step and the elevation of the ground there
+        double x0 = 0;
+        double ground0 = profile.elevationAt(x0);
+
+        while (y >= 0 && x0 < maxDistance) {
+            double x1 = min(x0 + DX, maxDistance);
+            double ground1 = profile.elevationAt(x1);
+            double ray1 = rayToGround(observerElevation, raySlope, ground1, x1);
+
+            // Resolves every row whose ray enters the ground in [x0, x1]
+            while (ray1 <= 0) {
+                RayToGroundDistance ray = rayToGroundEvaluator(profile,
+                        observerElevation, raySlope);
+                double start = max(x0, previousPosition);
+                double ray0 = start == x0
+                        ? rayToGround(observerElevation, raySlope, ground0, x0)
+                        : ray.valueAt(start);
+                if (ray0 * ray1 > 0) {
+                    break;
+                }
+                previousPosition = improveRoot(ray, start, x1, EPSILON);
+                setSample(builder, x, y, profile, previousPosition, altitude);
+
+                if (--y < 0) {
+                    return;
+                }
+                altitude = parameters.altitudeForY(y);
+                raySlope = tan(altitude);
+                ray1 = rayToGround(observerElevation, raySlope, ground1, x1);
+            }
+
+            x0 = x1;
+            ground0 = ground1;
+        }
+    }
+
+    /**
+     * Gives the distance in between the ray's elevation and an already known
+     * elevation of the ground, as given by PanoramaComputer.rayToGroundDistance
+     *
+     * @param ray0
+     *            the elevation of the ray at the observer's position (in
+     *            meters)
+     * @param raySlope
+     *            the ray's slope
+     * @param ground
+     *            the elevation of the ground at distance x (in meters)
+     * @param x
+     *            the horizontal distance from the observer (in meters)
+     * @return the distance (in meters) between the ray's elevation and the
+     *         ground
+     */
+    private static double rayToGround(double ray0, double raySlope,
+            double ground, double x) {
+        return ray0 + raySlope * x - ground + TRUE_RADIUS * (x * x);
+    }
+
+}
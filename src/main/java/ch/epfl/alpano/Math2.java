@@ -191,4 +191,88 @@ public interface Math2 {
         return small;
     }
 
+    /**
+     * Searches for the first interval of size dX in between two values,
+     * containing a root of the distance between a ray and the ground. Behaves
+     * exactly like the version taking a DoubleUnaryOperator, but evaluates the
+     * function without going through a lambda
+     * 
+     * @param f
+     *            the distance between the ray and the ground
+     * @param minX
+     *            the smallest value that can be in the interval
+     * @param maxX
+     *            the biggest value that can be in the interval
+     * @param dX
+     *            the size of the interval
+     * @return the lower bound of the first interval containing a root of f, and
+     *         Double.POSITIVE_INFINITY if no such interval exists
+     * @throws IllegalArgumentException
+     *             if the smallest possible value is bigger than the biggest
+     *             possible value
+     */
+    static double firstIntervalContainingRoot(RayToGroundDistance f,
+            double minX, double maxX, double dX) {
+        checkArgument(minX < maxX, "Minimum bigger than maximum!");
+        double x1 = minX - dX;
+        double x2 = Math.min(minX, maxX - dX);
+        // The upper bound of the previous interval and the value of f there,
+        // reused when it is the lower bound of the next interval
+        double previousX2 = Double.NaN;
+        double previousF2 = Double.NaN;
+        double findZero;
+        do {
+            x1 += dX;
+            x2 += dX;
+            double f1 = (x1 == previousX2) ? previousF2 : f.valueAt(x1);
+            previousX2 = x2;
+            previousF2 = f.valueAt(x2);
+            findZero = f1 * previousF2;
+        } while ((findZero >= 0) && (x2 <= maxX - dX));
+        if (findZero > 0) {
+            return Double.POSITIVE_INFINITY;
+        } else {
+            return x1;
+        }
+    }
+
+    /**
+     * Uses the dichotomy method to find an interval comprised between two
+     * bounds and smaller or equal to epsilon that contains a root of the
+     * distance between a ray and the ground. Behaves exactly like the version
+     * taking a DoubleUnaryOperator, but evaluates the function only once per
+     * step and without going through a lambda
+     * 
+     * @param f
+     *            the distance between the ray and the ground
+     * @param x1
+     *            the first bound in which the interval has to be
+     * @param x2
+     *            the second bound in which the interval has to be
+     * @param epsilon
+     *            the maximum size of the interval
+     * @return the smallest bound of the interval found
+     * @throws IllegalArgumentException
+     *             if no root is contained in between the two bounds
+     */
+    static double improveRoot(RayToGroundDistance f, double x1, double x2,
+            double epsilon) {
+        double small = Math.min(x1, x2);
+        double big = Math.max(x1, x2);
+        double fBig = f.valueAt(big);
+        checkArgument(f.valueAt(small) * fBig <= 0,
+                "This interval contains no root on the given function");
+        while (abs(big - small) > epsilon) {
+            double mid = 0.5 * (small + big);
+            double fMid = f.valueAt(mid);
+            if (fMid * fBig <= 0) {
+                small = mid;
+            } else {
+                big = mid;
+                fBig = fMid;
+            }
+        }
+        return small;
+    }
+
 }
@@ -192,6 +192,12 @@ public final class Panorama {
 
     /**
      * Build a panorama
+     * <p>
+     * The setters of a builder can be called concurrently by several threads,
+     * as long as no two threads write to the same point of the panorama (for
+     * instance when each thread fills its own columns). The panorama must only
+     * be built once all of these writes are completed and visible to the
+     * building thread (e.g. after joining the threads or the tasks).
      * 
      * @author Ghali Chraibi (262251)
      * @author Niels Poulsen (270494)
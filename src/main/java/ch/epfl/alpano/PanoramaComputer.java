@@ -4,30 +4,51 @@ package ch.epfl.alpano;
  * Represents a panorama calculator. Used to calculate the different points in a
  * panorama, their distance from the observer, their slope, their elevation,
  * etc.
+ * <p>
+ * A calculator created with a parallelism has its own pool, which is shut
+ * down when it is closed.
  *
  * @author Niels Poulsen
  */
 
 import static ch.epfl.alpano.Distance.EARTH_RADIUS;
+import static ch.epfl.alpano.Math2.angularDistance;
 import static ch.epfl.alpano.Math2.firstIntervalContainingRoot;
 import static ch.epfl.alpano.Math2.improveRoot;
 import static ch.epfl.alpano.Math2.sq;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Integer.bitCount;
+import static java.lang.Math.abs;
 import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Math.tan;
+import static java.util.Arrays.fill;
 import static java.util.Objects.requireNonNull;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.ObjIntConsumer;
 
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.ElevationProfileCache;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
 
-public final class PanoramaComputer {
+public final class PanoramaComputer implements AutoCloseable {
 
     /** The size of the interval in which to find the first root of our ray */
     public final static int DX = 64; 
 
     /** The degree of precision we want for our root of rayToGroundDistance */
-    private final static int EPSILON = 4;
+    final static int EPSILON = 4;
 
     /** The refraction coefficient used */
     private final static double K = 0.13;
@@ -36,18 +57,211 @@ public final class PanoramaComputer {
      * A constant used to compensate for the curvature of the earth when
      * creating a ray
      */
-    private final static double TRUE_RADIUS = ((1 - K) / (2 * EARTH_RADIUS));
+    final static double TRUE_RADIUS = ((1 - K) / (2 * EARTH_RADIUS));
+
+    /**
+     * The length of the parts of an elevation profile whose maximum elevation
+     * is read at once in the pyramid, when skipping the empty space below a ray
+     */
+    private final static int SKIP_LENGTH = 64 * DX;
+
+    /**
+     * The largest difference, as a fraction of the angle between two
+     * columns, between the azimuth of a column and the one of the column of a
+     * seed panorama copied in its place
+     */
+    final static double SEED_TOLERANCE = 1e-3;
 
     /** The continuous elevation representing the earth's surface */
     private final ContinuousElevationModel dem_;
 
     /**
-     * Creates a new panorama calculator
+     * The pyramid of the maximum elevations of the DEM, null if the search of
+     * the rays does not skip the empty space below them
+     */
+    private final MaxElevationPyramid pyramid_;
+
+    /**
+     * The pool in which the columns of a panorama are computed, null if they
+     * are computed sequentially
+     */
+    private final ForkJoinPool pool_;
+
+    /** Whether the pool was created by this, and is shut down when closed */
+    private final boolean ownsPool_;
+
+    /**
+     * The cache of the elevation profiles of the columns, null if they are
+     * built for each panorama
+     */
+    private final ElevationProfileCache profiles_;
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama one after the other
      * 
      * @param dem
+     *            the continuous elevation model representing the ground
+     * @throws NullPointerException
+     *             if the CEM is null
      */
     public PanoramaComputer(ContinuousElevationModel dem) {
-        dem_ = requireNonNull(dem, "The CEM given is null");
+        this(dem, 1);
+    }
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama in parallel, in a pool of its own shut down when it is closed
+     * 
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param parallelism
+     *            the number of threads computing the columns of a panorama (1
+     *            to compute them sequentially)
+     * @throws NullPointerException
+     *             if the CEM is null
+     * @throws IllegalArgumentException
+     *             if the parallelism is not strictly positive
+     */
+    public PanoramaComputer(ContinuousElevationModel dem, int parallelism) {
+        this(requireNonNull(dem, "The CEM given is null"), null,
+                ownPool(parallelism), true, null);
+    }
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama in parallel, in a pool of its own shut down when it is closed,
+     * and skips the parts of the elevation profiles which are entirely below a
+     * ray. The panoramas computed are the same as without skipping.
+     * 
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the discrete DEM
+     *            from which the continuous one is made
+     * @param parallelism
+     *            the number of threads computing the columns of a panorama (1
+     *            to compute them sequentially)
+     * @throws NullPointerException
+     *             if the CEM or the pyramid is null
+     * @throws IllegalArgumentException
+     *             if the parallelism is not strictly positive
+     */
+    public PanoramaComputer(ContinuousElevationModel dem,
+            MaxElevationPyramid pyramid, int parallelism) {
+        this(requireNonNull(dem, "The CEM given is null"),
+                requireNonNull(pyramid, "The pyramid given is null"),
+                ownPool(parallelism), true, null);
+    }
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama in a given pool, possibly shared with other computations, and
+     * skips the parts of the elevation profiles which are entirely below a
+     * ray. The pool is not shut down by this.
+     * 
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the discrete DEM
+     *            from which the continuous one is made
+     * @param pool
+     *            the pool in which the columns of a panorama are computed
+     * @throws NullPointerException
+     *             if the CEM, the pyramid or the pool is null
+     */
+    public PanoramaComputer(ContinuousElevationModel dem,
+            MaxElevationPyramid pyramid, ForkJoinPool pool) {
+        this(requireNonNull(dem, "The CEM given is null"),
+                requireNonNull(pyramid, "The pyramid given is null"),
+                requireNonNull(pool, "The pool given is null"), false, null);
+    }
+
+    /**
+     * Creates a new panorama calculator, which computes the columns of a
+     * panorama in a given pool, skips the parts of the elevation profiles
+     * which are entirely below a ray, and reuses the profiles of a cache
+     * across panoramas. The azimuths of the columns are rounded to the
+     * quantum the cache derives from the angle between two columns.
+     * 
+     * @param profiles
+     *            the cache of the elevation profiles, whose DEM is the one of
+     *            the panoramas
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the discrete DEM
+     *            from which the continuous one is made
+     * @param pool
+     *            the pool in which the columns of a panorama are computed
+     * @throws NullPointerException
+     *             if the cache, the pyramid or the pool is null
+     */
+    public PanoramaComputer(ElevationProfileCache profiles,
+            MaxElevationPyramid pyramid, ForkJoinPool pool) {
+        this(requireNonNull(profiles, "The profile cache given is null")
+                .elevationModel(),
+                requireNonNull(pyramid, "The pyramid given is null"),
+                requireNonNull(pool, "The pool given is null"), false,
+                profiles);
+    }
+
+    /**
+     * Creates a new panorama calculator from arguments already checked
+     * 
+     * @param dem
+     *            the continuous elevation model representing the ground
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the DEM, or null
+     * @param pool
+     *            the pool in which the columns are computed, or null
+     * @param ownsPool
+     *            whether the pool is shut down when this is closed
+     * @param profiles
+     *            the cache of the elevation profiles, or null
+     */
+    private PanoramaComputer(ContinuousElevationModel dem,
+            MaxElevationPyramid pyramid, ForkJoinPool pool, boolean ownsPool,
+            ElevationProfileCache profiles) {
+        dem_ = dem;
+        pyramid_ = pyramid;
+        pool_ = pool;
+        ownsPool_ = ownsPool && pool != null;
+        profiles_ = profiles;
+    }
+
+    /**
+     * Creates the pool of a panorama calculator computing its columns in
+     * parallel
+     * 
+     * @param parallelism
+     *            the number of threads of the pool
+     * @return the pool, or null if the parallelism is 1
+     * @throws IllegalArgumentException
+     *             if the parallelism is not strictly positive
+     */
+    private static ForkJoinPool ownPool(int parallelism) {
+        checkArgument(parallelism > 0,
+                "The parallelism is not strictly positive");
+        return parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Gives the number of threads computing the columns of a panorama
+     * 
+     * @return the parallelism of this
+     */
+    public int parallelism() {
+        return pool_ == null ? 1 : pool_.getParallelism();
+    }
+
+    /**
+     * Shuts down the pool created by this, if any. A pool given to this is
+     * left running.
+     */
+    @Override
+    public void close() {
+        if (ownsPool_) {
+            pool_.shutdown();
+        }
     }
 
     /**
@@ -58,55 +272,627 @@ public final class PanoramaComputer {
      * @return a new panorama
      */
     public Panorama computePanorama(PanoramaParameters parameters) {
-        
         Panorama.Builder builder = new Panorama.Builder(parameters);
+        IntConsumer column = x -> computeColumn(parameters, builder, x);
+
+        forEachColumn(column, parameters.width());
+        return builder.build();
+    }
+
+    /**
+     * Creates a new panorama based on it's parameters, in successive stages
+     * of increasing resolution. The first stage only computes every n-th
+     * column and row, and each following one halves that stride, reusing the
+     * points already computed. After each stage, a panorama of the full size
+     * is given to a consumer, each point taking the value of the nearest
+     * computed one to its upper left.
+     * <p>
+     * The points of the coarse stages are searched from the computed point
+     * below them, rows further down, so they may differ by a few meters from
+     * the exact ones. The last stage thus computes all of the points again,
+     * and is identical to {@link #computePanorama(PanoramaParameters)}; the
+     * coarse stages cost about a third of a full computation more.
+     * 
+     * @param parameters
+     *            the parameters used to create the panorama
+     * @param coarsestStride
+     *            the stride of the first stage, which must be a power of two
+     * @param stages
+     *            the consumer of the panorama and the stride of each stage,
+     *            called by the calling thread
+     * @return the panorama of the last stage, where all of the points are
+     *         computed
+     * @throws IllegalArgumentException
+     *             if the stride is not a power of two
+     * @throws NullPointerException
+     *             if the consumer is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            int coarsestStride, ObjIntConsumer<Panorama> stages) {
+        checkArgument(coarsestStride > 0 && bitCount(coarsestStride) == 1,
+                "The stride is not a power of two");
+        requireNonNull(stages, "The consumer of the stages is null");
+        ProgressiveSamples samples = new ProgressiveSamples(
+                parameters.width() * parameters.height());
+
+        for (int stride = coarsestStride; stride > 1; stride /= 2) {
+            int s = stride;
+            int columns = (parameters.width() - 1) / s + 1;
+            IntConsumer column = i -> computeColumn(parameters, samples,
+                    i * s, s);
+            forEachColumn(column, columns);
+            stages.accept(samples.panorama(parameters, s), s);
+        }
+        Panorama panorama = computePanorama(parameters);
+        stages.accept(panorama, 1);
+        return panorama;
+    }
+
+    /**
+     * Creates a new panorama based on it's parameters, reporting the columns
+     * computed to a monitor and stopping as soon as it is cancelled
+     * 
+     * @param parameters
+     *            the parameters used to create the panorama
+     * @param monitor
+     *            the monitor of the computation
+     * @return a new panorama
+     * @throws CancellationException
+     *             if the computation was cancelled before all of the columns
+     *             were computed
+     * @throws NullPointerException
+     *             if the monitor is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            ComputationMonitor monitor) {
+        requireNonNull(monitor, "The monitor given is null");
+        monitor.start(parameters.width());
+        return computePanorama(parameters, monitor, x -> true);
+    }
+
+    /**
+     * Creates a new panorama based on it's parameters, as part of a
+     * computation already started, stopping as soon as it is cancelled
+     * 
+     * @param parameters
+     *            the parameters used to create the panorama
+     * @param monitor
+     *            the monitor of the computation
+     * @param counted
+     *            the columns reported to the monitor once computed
+     * @return a new panorama
+     * @throws CancellationException
+     *             if the computation was cancelled before all of the columns
+     *             were computed
+     */
+    Panorama computePanorama(PanoramaParameters parameters,
+            ComputationMonitor monitor, IntPredicate counted) {
+        Panorama.Builder builder = new Panorama.Builder(parameters);
+        IntConsumer column = x -> {
+            monitor.checkCancelled();
+            computeColumn(parameters, builder, x);
+            if (counted.test(x)) {
+                monitor.columnCompleted();
+            }
+        };
+
+        forEachColumn(column, parameters.width());
+        return builder.build();
+    }
+
+    /**
+     * Computes a panorama by batches of neighbouring columns, each of them
+     * given to a consumer as a panorama of its own as soon as it is computed.
+     * If this has a pool, the batches are submitted to it ahead of the
+     * consumer, so that its threads keep computing while the consumer handles
+     * the previous batches, but only twice as many as the parallelism of this
+     * are computed or held at a time.
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param columnsPerBatch
+     *            the number of columns of the batches (the last one possibly
+     *            having one more or less)
+     * @param batches
+     *            the consumer of the panorama of each batch and of the
+     *            horizontal index of its first column, called by the calling
+     *            thread in the order of the columns
+     * @throws IllegalArgumentException
+     *             if there are less than two columns per batch
+     * @throws NullPointerException
+     *             if the consumer is null
+     */
+    public void computeColumnBatches(PanoramaParameters parameters,
+            int columnsPerBatch, ObjIntConsumer<Panorama> batches) {
+        checkArgument(columnsPerBatch > 1,
+                "There are less than two columns per batch");
+        requireNonNull(batches, "The consumer of the batches is null");
+        int width = parameters.width();
+        int window = pool_ == null ? 1 : 2 * parallelism();
+        Deque<ForkJoinTask<Panorama>> computed = new ArrayDeque<>(window);
+        Deque<Integer> starts = new ArrayDeque<>(window);
+        try {
+            for (int from = 0; from < width || !computed.isEmpty();) {
+                if (from < width && computed.size() < window) {
+                    int to = min(from + columnsPerBatch, width);
+                    // A panorama has at least two columns
+                    if (width - to == 1) {
+                        to = width;
+                    }
+                    PanoramaParameters batch = parameters.columns(from, to);
+                    ForkJoinTask<Panorama> task = ForkJoinTask
+                            .adapt(() -> computeBatch(batch));
+                    if (pool_ != null) {
+                        pool_.execute(task);
+                    }
+                    computed.add(task);
+                    starts.add(from);
+                    from = to;
+                } else {
+                    ForkJoinTask<Panorama> task = computed.remove();
+                    Panorama batch = pool_ == null ? task.invoke()
+                            : task.join();
+                    batches.accept(batch, starts.remove());
+                }
+            }
+        } finally {
+            // The batches left if the consumer or a batch failed
+            for (ForkJoinTask<Panorama> task : computed) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Computes the columns of a batch, forking them in the pool of this if it
+     * is running the batch
+     * 
+     * @param parameters
+     *            the parameters of the batch
+     * @return the panorama of the batch
+     */
+    private Panorama computeBatch(PanoramaParameters parameters) {
+        Panorama.Builder builder = new Panorama.Builder(parameters);
+        IntConsumer column = x -> computeColumn(parameters, builder, x);
+        if (pool_ != null && ForkJoinTask.getPool() == pool_) {
+            new ColumnsTask(column, 0, parameters.width()).invoke();
+        } else {
+            forEachColumn(column, parameters.width());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a new panorama based on it's parameters, copying the columns of
+     * a previously computed panorama which face the same azimuth (e.g. when
+     * the center azimuth was only moved by a few columns). Only the other
+     * columns are computed.
+     * 
+     * @param parameters
+     *            the parameters used to create the panorama
+     * @param seed
+     *            the previously computed panorama, whose columns are only
+     *            copied if it has the same observer, maximum distance, height
+     *            and angle between two columns as the new one
+     * @return a new panorama
+     * @throws NullPointerException
+     *             if the seed is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            Panorama seed) {
+        return computePanorama(parameters, seed, new ComputationMonitor());
+    }
+
+    /**
+     * Creates a new panorama based on it's parameters, copying the columns of
+     * a previously computed panorama which face the same azimuth, reporting
+     * the columns computed or copied to a monitor and stopping as soon as it
+     * is cancelled
+     * 
+     * @param parameters
+     *            the parameters used to create the panorama
+     * @param seed
+     *            the previously computed panorama, whose columns are only
+     *            copied if it has the same observer, maximum distance, height
+     *            and angle between two columns as the new one
+     * @param monitor
+     *            the monitor of the computation
+     * @return a new panorama
+     * @throws CancellationException
+     *             if the computation was cancelled before all of the columns
+     *             were computed or copied
+     * @throws NullPointerException
+     *             if the seed or the monitor is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            Panorama seed, ComputationMonitor monitor) {
+        int[] seedColumns = seedColumns(parameters,
+                requireNonNull(seed, "The seed given is null").parameters());
+        requireNonNull(monitor, "The monitor given is null");
+        monitor.start(parameters.width());
+        Panorama.Builder builder = new Panorama.Builder(parameters);
+        IntConsumer column = x -> {
+            monitor.checkCancelled();
+            if (seedColumns[x] < 0) {
+                computeColumn(parameters, builder, x);
+            } else {
+                copyColumn(seed, seedColumns[x], builder, x);
+            }
+            monitor.columnCompleted();
+        };
+
+        forEachColumn(column, parameters.width());
+        return builder.build();
+    }
+
+    /**
+     * Computes columns, in parallel if this has a pool
+     * 
+     * @param column
+     *            the computation of a single column
+     * @param columns
+     *            the number of columns
+     */
+    private void forEachColumn(IntConsumer column, int columns) {
+        if (pool_ == null) {
+            for (int x = 0; x < columns; ++x) {
+                column.accept(x);
+            }
+        } else {
+            pool_.invoke(new ColumnsTask(column, 0, columns));
+        }
+    }
 
+    /**
+     * Gives the column of a seed panorama facing the same azimuth as each
+     * column of a new one
+     * 
+     * @param parameters
+     *            the parameters of the new panorama
+     * @param seed
+     *            the parameters of the seed panorama
+     * @return the index of the column of the seed for each column of the new
+     *         panorama, or -1 if none of them faces its azimuth
+     */
+    private static int[] seedColumns(PanoramaParameters parameters,
+            PanoramaParameters seed) {
+        int[] columns = new int[parameters.width()];
+        double delta = parameters.horizontalFieldOfView()
+                / (parameters.width() - 1);
+        double seedDelta = seed.horizontalFieldOfView() / (seed.width() - 1);
+        boolean sameRays = seed.observerPosition().longitude() == parameters
+                .observerPosition().longitude()
+                && seed.observerPosition().latitude() == parameters
+                        .observerPosition().latitude()
+                && seed.observerElevation() == parameters.observerElevation()
+                && seed.maxDistance() == parameters.maxDistance()
+                && seed.height() == parameters.height()
+                && abs(seedDelta - delta) * max(seed.width(),
+                        seed.height()) <= SEED_TOLERANCE * delta;
+
+        for (int x = 0; x < columns.length; ++x) {
+            columns[x] = -1;
+            if (sameRays) {
+                double seedX = (seed.width() - 1) / 2.0 + angularDistance(
+                        seed.centerAzimuth(), parameters.azimuthForX(x))
+                        / seedDelta;
+                long nearest = Math.round(seedX);
+                if (0 <= nearest && nearest < seed.width()
+                        && abs(seedX - nearest) <= SEED_TOLERANCE) {
+                    columns[x] = (int) nearest;
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Copies a column of a panorama into the builder of another one
+     * 
+     * @param from
+     *            the panorama from which the column is copied
+     * @param fromX
+     *            the index of the column in that panorama
+     * @param builder
+     *            the builder in which the points are stored
+     * @param x
+     *            the index of the column in the builder
+     */
+    private static void copyColumn(Panorama from, int fromX,
+            Panorama.Builder builder, int x) {
+        for (int y = 0; y < from.parameters().height(); ++y) {
+            builder.setDistanceAt(x, y, from.distanceAt(fromX, y))
+                   .setLongitudeAt(x, y, from.longitudeAt(fromX, y))
+                   .setLatitudeAt(x, y, from.latitudeAt(fromX, y))
+                   .setSlopeAt(x, y, from.slopeAt(fromX, y))
+                   .setElevationAt(x, y, from.elevationAt(fromX, y));
+        }
+    }
+
+    /**
+     * Computes all of the points of a column of a panorama
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param builder
+     *            the builder in which the points are stored
+     * @param x
+     *            the index of the column
+     */
+    private void computeColumn(PanoramaParameters parameters,
+            Panorama.Builder builder, int x) {
         int maxDistance = parameters.maxDistance();
-        GeoPoint observerPosition = parameters.observerPosition();
-        double observerElevation = parameters.observerElevation();
+        ElevationProfile profile = profile(parameters, x);
 
-        for (int x = 0; x < parameters.width(); ++x) {
+        // The distance from the observer to the previous Altitudes distance
+        double previousPosition = 0;
 
-            // Creates an elevation profile based on the azimuth of the x value
-            double azimuth = parameters.azimuthForX(x);
-            ElevationProfile profile = new ElevationProfile(dem_,
-                    observerPosition, azimuth, maxDistance);
+        // Computes all of the rays for the already computed x
+        for (int y = parameters.height() - 1; y >= 0
+                && previousPosition <= maxDistance; --y) {
+            double altitude = parameters.altitudeForY(y);
+            double horizontalDistance = horizontalDistance(parameters,
+                    profile, altitude, previousPosition);
+            if (horizontalDistance <= maxDistance) {
+                setSample(builder, x, y, profile, horizontalDistance,
+                        altitude);
+            }
+            previousPosition = horizontalDistance;
+        }
+    }
 
-            // The distance from the observer to the previous Altitudes distance
-            double previousPosition = 0;
+    /**
+     * Computes the points of a column of a panorama on every stride-th row,
+     * skipping the ones already computed during a coarser stage
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param samples
+     *            the points computed so far, in which the new ones are stored
+     * @param x
+     *            the index of the column
+     * @param stride
+     *            the number of rows between two computed points
+     */
+    private void computeColumn(PanoramaParameters parameters,
+            ProgressiveSamples samples, int x, int stride) {
+        int maxDistance = parameters.maxDistance();
+        ElevationProfile profile = profile(parameters, x);
+        double previousPosition = 0;
 
-            // Computes all of the rays for the already computed x
-            for (int y = parameters.height() - 1; y >= 0
-                    && previousPosition <= maxDistance; --y) {
+        // The points already computed are lower bounds of the distance of the
+        // rays above them, as the ones of the previous rows
+        for (int y = (parameters.height() - 1) / stride * stride; y >= 0
+                && previousPosition <= maxDistance; y -= stride) {
+            int index = parameters.linearSampleIndex(x, y);
+            if (Double.isNaN(samples.horizontalDistances_[index])) {
                 double altitude = parameters.altitudeForY(y);
-                double raySlope = tan(altitude);
-                DoubleUnaryOperator ray = rayToGroundDistance(profile,
-                        observerElevation, raySlope);
-                double intervalStart = firstIntervalContainingRoot(ray,
-                        previousPosition, maxDistance, DX);
-                double horizontalDistance = Double.POSITIVE_INFINITY;
-
-                // Checks that a zero of the function is in the view
-                if ((intervalStart <= maxDistance)
-                        && (ray.applyAsDouble(intervalStart)
-                                * ray.applyAsDouble(Math.min(intervalStart + DX,
-                                        maxDistance)) <= 0)) {
-                    horizontalDistance = improveRoot(ray, intervalStart,
-                            Math.min(intervalStart + DX, maxDistance), EPSILON);
-                    
-                    double trueDistance = horizontalDistance / cos(altitude);
-                    GeoPoint position = profile.positionAt(horizontalDistance);
-                    
-                    builder.setDistanceAt(x, y, (float) trueDistance)
-                           .setLongitudeAt(x, y, (float) position.longitude())
-                           .setLatitudeAt(x, y, (float) position.latitude())
-                           .setSlopeAt(x, y, (float) profile.slopeAt(horizontalDistance))
-                           .setElevationAt(x, y, (float) profile.elevationAt(horizontalDistance));
+                samples.set(index, profile, horizontalDistance(parameters,
+                        profile, altitude, previousPosition), altitude);
+            }
+            previousPosition = samples.horizontalDistances_[index];
+        }
+    }
+
+    /**
+     * Gives the elevation profile of a column of a panorama
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param x
+     *            the index of the column
+     * @return the elevation profile
+     */
+    private ElevationProfile profile(PanoramaParameters parameters, int x) {
+        double azimuth = parameters.azimuthForX(x);
+        return profiles_ == null
+                ? new ElevationProfile(dem_, parameters.observerPosition(),
+                        azimuth, parameters.maxDistance())
+                : profiles_.profile(parameters.observerPosition(), azimuth,
+                        parameters.maxDistance(),
+                        parameters.horizontalFieldOfView()
+                                / (parameters.width() - 1));
+    }
+
+    /**
+     * Gives the horizontal distance between the observer and the point of the
+     * ground hit by a ray
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param profile
+     *            the elevation profile of the column of the ray
+     * @param altitude
+     *            the altitude of the ray (in radians)
+     * @param from
+     *            the distance from which the ray is searched (in meters),
+     *            which must not be greater than the one of the point hit
+     * @return the horizontal distance (in meters), or
+     *         Double.POSITIVE_INFINITY if the ray does not hit the ground
+     *         before the maximum distance
+     */
+    private double horizontalDistance(PanoramaParameters parameters,
+            ElevationProfile profile, double altitude, double from) {
+        int maxDistance = parameters.maxDistance();
+        double observerElevation = parameters.observerElevation();
+        double raySlope = tan(altitude);
+        RayToGroundDistance ray = rayToGroundEvaluator(profile,
+                observerElevation, raySlope);
+        double searchStart = pyramid_ == null ? from
+                : skipEmptySpace(profile, observerElevation, raySlope, from,
+                        maxDistance);
+        double intervalStart = searchStart > maxDistance
+                ? Double.POSITIVE_INFINITY
+                : firstIntervalContainingRoot(ray, searchStart, maxDistance,
+                        DX);
+
+        // Checks that a zero of the function is in the view
+        if ((intervalStart <= maxDistance) && (ray.valueAt(intervalStart)
+                * ray.valueAt(Math.min(intervalStart + DX, maxDistance)) <= 0)) {
+            return improveRoot(ray, intervalStart,
+                    Math.min(intervalStart + DX, maxDistance), EPSILON);
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Skips the parts of an elevation profile whose maximum elevation is
+     * below a ray. Only whole intervals of DX meters are skipped, so the search
+     * of the first interval containing a root from the distance returned
+     * examines the same intervals as it would have from the original one.
+     * 
+     * @param profile
+     *            the elevation profile representing the ground's elevation
+     * @param ray0
+     *            the elevation of the ray at the observer's position (in
+     *            meters)
+     * @param raySlope
+     *            the ray's slope
+     * @param from
+     *            the distance from which the ray is searched (in meters)
+     * @param maxDistance
+     *            the distance up to which the ray is searched (in meters)
+     * @return the distance from which the ray has to be searched, or
+     *         Double.POSITIVE_INFINITY if it is above the ground up to
+     *         maxDistance
+     */
+    private double skipEmptySpace(ElevationProfile profile, double ray0,
+            double raySlope, double from, int maxDistance) {
+        double end = from;
+        while (end < maxDistance) {
+            double next = min((floor(end / SKIP_LENGTH) + 1) * SKIP_LENGTH,
+                    maxDistance);
+            if (lowestRayElevation(ray0, raySlope, end,
+                    next) <= profile.maxElevationBetween(pyramid_, end, next)) {
+                break;
+            }
+            end = next;
+        }
+        if (end >= maxDistance) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double steps = min(floor((end - from) / DX),
+                max(0, floor((maxDistance - DX - from) / DX)));
+        return from + steps * DX;
+    }
+
+    /**
+     * Gives the lowest elevation of a ray (compensated for the curvature of
+     * the earth and the refraction) in between two distances
+     * 
+     * @param ray0
+     *            the elevation of the ray at the observer's position (in
+     *            meters)
+     * @param raySlope
+     *            the ray's slope
+     * @param from
+     *            the smallest distance (in meters)
+     * @param to
+     *            the biggest distance (in meters)
+     * @return the lowest elevation of the ray in between the two distances
+     */
+    private static double lowestRayElevation(double ray0, double raySlope,
+            double from, double to) {
+        // The compensated elevation of a ray is a convex parabola
+        double x = max(from, min(to, -raySlope / (2 * TRUE_RADIUS)));
+        return ray0 + raySlope * x + TRUE_RADIUS * sq(x);
+    }
+
+    /**
+     * Stores the point of the ground hit by the ray of a pixel in a builder
+     * 
+     * @param builder
+     *            the builder of the panorama
+     * @param x
+     *            the horizontal index of the pixel
+     * @param y
+     *            the vertical index of the pixel
+     * @param profile
+     *            the elevation profile of the column of the pixel
+     * @param horizontalDistance
+     *            the horizontal distance (in meters) between the observer and
+     *            the point hit by the ray
+     * @param altitude
+     *            the altitude of the ray (in radians)
+     */
+    static void setSample(Panorama.Builder builder, int x, int y,
+            ElevationProfile profile, double horizontalDistance,
+            double altitude) {
+        double trueDistance = horizontalDistance / cos(altitude);
+
+        builder.setDistanceAt(x, y, (float) trueDistance)
+               .setLongitudeAt(x, y, (float) profile.longitudeAt(horizontalDistance))
+               .setLatitudeAt(x, y, (float) profile.latitudeAt(horizontalDistance))
+               .setSlopeAt(x, y, (float) profile.slopeAt(horizontalDistance))
+               .setElevationAt(x, y, (float) profile.elevationAt(horizontalDistance));
+    }
+
+    /**
+     * Holds the points of a panorama computed so far by a progressive
+     * computation
+     */
+    private final static class ProgressiveSamples {
+
+        /** The horizontal distances of the points, NaN if not computed yet */
+        private final double[] horizontalDistances_;
+
+        /** The attributes of the points, as in a panorama */
+        private final float[] distances_, longitudes_, latitudes_,
+                elevations_, slopes_;
+
+        private ProgressiveSamples(int size) {
+            horizontalDistances_ = new double[size];
+            fill(horizontalDistances_, Double.NaN);
+            distances_ = new float[size];
+            longitudes_ = new float[size];
+            latitudes_ = new float[size];
+            elevations_ = new float[size];
+            slopes_ = new float[size];
+        }
+
+        /**
+         * Stores the point of the ground hit by the ray of a pixel, as
+         * {@link PanoramaComputer#setSample} does
+         */
+        private void set(int index, ElevationProfile profile,
+                double horizontalDistance, double altitude) {
+            horizontalDistances_[index] = horizontalDistance;
+            if (horizontalDistance == Double.POSITIVE_INFINITY) {
+                distances_[index] = Float.POSITIVE_INFINITY;
+                return;
+            }
+            distances_[index] = (float) (horizontalDistance / cos(altitude));
+            longitudes_[index] = (float) profile
+                    .longitudeAt(horizontalDistance);
+            latitudes_[index] = (float) profile.latitudeAt(horizontalDistance);
+            elevations_[index] = (float) profile
+                    .elevationAt(horizontalDistance);
+            slopes_[index] = (float) profile.slopeAt(horizontalDistance);
+        }
+
+        /**
+         * Builds a panorama in which each point takes the value of the
+         * computed one to its upper left, at a multiple of the stride
+         */
+        private Panorama panorama(PanoramaParameters parameters, int stride) {
+            Panorama.Builder builder = new Panorama.Builder(parameters);
+            for (int y = 0; y < parameters.height(); ++y) {
+                for (int x = 0; x < parameters.width(); ++x) {
+                    int index = parameters.linearSampleIndex(x - x % stride,
+                            y - y % stride);
+                    // The points above the last ray hitting the ground of a
+                    // column are never computed, and hit nothing either
+                    if (horizontalDistances_[index] < Double.POSITIVE_INFINITY) {
+                        builder.setDistanceAt(x, y, distances_[index])
+                               .setLongitudeAt(x, y, longitudes_[index])
+                               .setLatitudeAt(x, y, latitudes_[index])
+                               .setSlopeAt(x, y, slopes_[index])
+                               .setElevationAt(x, y, elevations_[index]);
+                    }
                 }
-                previousPosition = horizontalDistance;
             }
+            return builder.build();
         }
-        return builder.build();
     }
 
     /**
@@ -129,4 +915,25 @@ public final class PanoramaComputer {
                 + TRUE_RADIUS * sq(x));
     }
 
+    /**
+     * Creates a new evaluator of the distance in between the ray's elevation
+     * and the ground, which gives the same values as
+     * {@link #rayToGroundDistance(ElevationProfile, double, double)} without
+     * creating any object per evaluation
+     * 
+     * @param profile
+     *            the elevation profile representing the ground's elevation
+     * @param ray0
+     *            the elevation of the ray at the observer's position (in
+     *            meters)
+     * @param raySlope
+     *            the ray's slope
+     * @return the evaluator of the distance (in meters) between the ray's
+     *         elevation and the ground
+     */
+    public static RayToGroundDistance rayToGroundEvaluator(
+            ElevationProfile profile, double ray0, double raySlope) {
+        return new RayToGroundDistance(profile, ray0, raySlope, TRUE_RADIUS);
+    }
+
 }
@@ -126,6 +126,28 @@ public final class PanoramaParameters {
         return (width() - 1) / 2.0 + (angularDistance / delta);
     }
 
+    /**
+     * Gives the parameters of the panorama made of some neighbouring columns
+     * of this, whose pixels face the same azimuths and altitudes as in this
+     * 
+     * @param fromX
+     *            the horizontal index of the first column (inclusive)
+     * @param toX
+     *            the horizontal index of the last column (exclusive)
+     * @return the parameters of the panorama made of the columns
+     * @throws IllegalArgumentException
+     *             if the columns are not in this, or if there are less than
+     *             two of them
+     */
+    public PanoramaParameters columns(int fromX, int toX) {
+        checkArgument(0 <= fromX && fromX + 1 < toX && toX <= width(),
+                "The columns are not at least two columns of this");
+        double fieldOfView = delta * (toX - fromX - 1);
+        return new PanoramaParameters(observerPosition(), observerElevation(),
+                azimuthForX(fromX + (toX - fromX - 1) / 2.0),
+                fieldOfView, maxDistance(), toX - fromX, height());
+    }
+
     /**
      * Calculates the altitude of a pixel when given its vertical index
      * 
@@ -0,0 +1,74 @@
+package ch.epfl.alpano;
+
+/**
+ * Represents the distance between a ray starting at the observer and the
+ * ground of an elevation profile. Unlike the function given by
+ * PanoramaComputer.rayToGroundDistance, it is evaluated through a final
+ * method on primitive values only, so that no object is created for each
+ * sample and the root-finding methods of Math2 taking it can be inlined.
+ *
+ * @author Niels Poulsen
+ */
+
+import static java.util.Objects.requireNonNull;
+
+import ch.epfl.alpano.dem.ElevationProfile;
+
+public final class RayToGroundDistance {
+
+    /** The elevation profile representing the ground */
+    private final ElevationProfile profile_;
+
+    /** The elevation of the ray at the observer's position (in meters) */
+    private final double ray0_;
+
+    /** The slope of the ray */
+    private final double raySlope_;
+
+    /**
+     * The coefficient compensating for the curvature of the earth and the
+     * refraction of the ray
+     */
+    private final double curvature_;
+
+    /**
+     * Creates the distance between a ray and the ground
+     *
+     * @param profile
+     *            the elevation profile representing the ground's elevation
+     * @param ray0
+     *            the elevation of the ray at the observer's position (in
+     *            meters)
+     * @param raySlope
+     *            the ray's slope
+     * @param curvature
+     *            the coefficient of the squared distance compensating for the
+     *            curvature of the earth and the refraction
+     * @throws NullPointerException
+     *             if the profile is null
+     */
+    RayToGroundDistance(ElevationProfile profile, double ray0,
+            double raySlope, double curvature) {
+        profile_ = requireNonNull(profile, "The elevation profile is null");
+        ray0_ = ray0;
+        raySlope_ = raySlope;
+        curvature_ = curvature;
+    }
+
+    /**
+     * Gives the distance between the ray and the ground at a certain distance
+     * from the observer
+     *
+     * @param x
+     *            the horizontal distance from the observer (in meters)
+     * @return the distance (in meters) between the ray and the ground,
+     *         negative if the ground is above the ray
+     * @throws IllegalArgumentException
+     *             if x is not in the elevation profile
+     */
+    public double valueAt(double x) {
+        return ray0_ + raySlope_ * x - profile_.elevationAt(x)
+                + curvature_ * (x * x);
+    }
+
+}
@@ -0,0 +1,50 @@
+package ch.epfl.alpano.alpanoreact.api;
+
+/**
+ * Body of a request for the elevations of several points
+ */
+public class ElevationQuery {
+
+    /** The longitudes of the points, in degrees */
+    private double[] longitudes = new double[0];
+
+    /** The latitudes of the points, in degrees */
+    private double[] latitudes = new double[0];
+
+    /**
+     * Gives the longitudes of the points
+     *
+     * @return the longitudes of the points, in degrees
+     */
+    public double[] getLongitudes(){
+        return longitudes;
+    }
+
+    /**
+     * Sets the longitudes of the points
+     *
+     * @param longitudes the longitudes of the points, in degrees
+     */
+    public void setLongitudes(double[] longitudes){
+        this.longitudes = longitudes;
+    }
+
+    /**
+     * Gives the latitudes of the points
+     *
+     * @return the latitudes of the points, in degrees
+     */
+    public double[] getLatitudes(){
+        return latitudes;
+    }
+
+    /**
+     * Sets the latitudes of the points
+     *
+     * @param latitudes the latitudes of the points, in degrees
+     */
+    public void setLatitudes(double[] latitudes){
+        this.latitudes = latitudes;
+    }
+
+}
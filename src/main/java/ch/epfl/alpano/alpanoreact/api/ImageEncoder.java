@@ -0,0 +1,81 @@
+package ch.epfl.alpano.alpanoreact.api;
+
+import org.springframework.http.MediaType;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Base64;
+
+/**
+ * Writes the images computed by the service (arrays holding the packed ARGB color of each pixel, row by row) in
+ * binary formats
+ */
+final class ImageEncoder {
+
+    /** The media type of the raw images */
+    static final String RAW_RGBA = "application/octet-stream";
+
+    /** The size of the buffer used to write the raw images */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private ImageEncoder(){
+    }
+
+    /**
+     * Writes an image in the PNG format
+     *
+     * @param argb the packed ARGB color of each pixel, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param out the stream in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    static void writePng(int[] argb, int width, int height, OutputStream out) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, width, height, argb, 0, width);
+        ImageIO.write(image, "png", out);
+    }
+
+    /**
+     * Encodes an image in the PNG format as a data URL, which can be sent in a text message
+     *
+     * @param argb the packed ARGB color of each pixel, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the data URL of the image
+     * @throws IOException if the image could not be encoded
+     */
+    static String pngDataUrl(int[] argb, int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writePng(argb, width, height, out);
+        return "data:" + MediaType.IMAGE_PNG_VALUE + ";base64," + Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Writes an image as raw bytes, the red, green, blue and alpha values of each pixel, row by row
+     *
+     * @param argb the packed ARGB color of each pixel, row by row
+     * @param out the stream in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    static void writeRaw(int[] argb, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int length = 0;
+        for (int color : argb){
+            buffer[length] = (byte) (color >> 16);
+            buffer[length + 1] = (byte) (color >> 8);
+            buffer[length + 2] = (byte) color;
+            buffer[length + 3] = (byte) (color >>> 24);
+            length += 4;
+            if (length == BUFFER_SIZE){
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+        }
+        out.write(buffer, 0, length);
+    }
+
+}
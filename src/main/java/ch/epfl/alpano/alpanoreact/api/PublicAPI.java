@@ -3,8 +3,27 @@ package ch.epfl.alpano.alpanoreact.api;
 import ch.epfl.alpano.PanoramaParameters;
 import ch.epfl.alpano.PanoramaUserParameters;
 import ch.epfl.alpano.alpanoreact.service.Alpano;
+import ch.epfl.alpano.alpanoreact.service.PanoramaJob;
+import ch.epfl.alpano.alpanoreact.service.PanoramaJobs;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * API for the application
@@ -13,10 +32,17 @@ import org.springframework.web.bind.annotation.*;
 @CrossOrigin("http://localhost:3000")
 public class PublicAPI {
 
+    /** The time, in milliseconds, after which a progressive or streamed computation is abandoned */
+    private static final long PROGRESSIVE_TIMEOUT = 120_000;
+
     /**  */
     @Autowired
     private Alpano alps;
 
+    /** The panoramas submitted as jobs */
+    @Autowired
+    private PanoramaJobs jobs;
+
     /**
      * Returns an array containing the pixels for this panorama, of size 1080x480
      *
@@ -26,6 +52,8 @@ public class PublicAPI {
     public int[] getImage(){
         try {
             return alps.computePanorama();
+        }catch (RejectedExecutionException E){
+            throw serverBusy(E);
         }catch (Exception E){
             return new int[0];
         }
@@ -44,9 +72,423 @@ public class PublicAPI {
             PanoramaUserParameters params = new PanoramaUserParameters(longitude, latitude, elevation, azimuth, fieldOfView,
                     maxDistance, imageWidth, imageHeight, samplingExponent);
             return alps.computePanorama(params);
+        }catch (RejectedExecutionException E){
+            throw serverBusy(E);
         }catch (Exception E){
             return new int[0];
         }
     }
 
+    /**
+     * Writes the image of the default panorama, as a PNG or as raw RGBA bytes depending on the Accept header
+     *
+     * @param accept the media types accepted by the client
+     * @param response the response in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    @GetMapping(value = "/getImage", produces = {MediaType.IMAGE_PNG_VALUE, ImageEncoder.RAW_RGBA})
+    public void getBinaryImage(@RequestHeader(HttpHeaders.ACCEPT) String accept, HttpServletResponse response)
+            throws IOException {
+        writeImage(alps.getDefaultParameters(), accept, response);
+    }
+
+    /**
+     * Writes the image of a panorama, as a PNG or as raw RGBA bytes depending on the Accept header
+     *
+     * @param accept the media types accepted by the client
+     * @param response the response in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    @GetMapping(value = "/computePanorama", produces = {MediaType.IMAGE_PNG_VALUE, ImageEncoder.RAW_RGBA})
+    public void computeBinaryPanorama(@RequestParam String longitude, @RequestParam String latitude,
+                                      @RequestParam String elevation, @RequestParam String azimuth,
+                                      @RequestParam String fieldOfView, @RequestParam String maxDistance,
+                                      @RequestParam String imageWidth, @RequestParam String imageHeight,
+                                      @RequestParam String samplingExponent,
+                                      @RequestHeader(HttpHeaders.ACCEPT) String accept, HttpServletResponse response)
+            throws IOException {
+        PanoramaUserParameters params = new PanoramaUserParameters(longitude, latitude, elevation, azimuth,
+                fieldOfView, maxDistance, imageWidth, imageHeight, samplingExponent);
+        writeImage(params, accept, response);
+    }
+
+    /**
+     * Streams the images of a panorama of increasing resolution as server-sent events, one "stage" event per image,
+     * each holding the stride of the stage (the number of columns and rows between two computed pixels), the size of
+     * the image and the image itself as a PNG data URL. The last stage has a stride of 1, and the stream then ends
+     *
+     * @return the emitter of the events
+     */
+    @GetMapping(value = "/computePanorama", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter computeProgressivePanorama(@RequestParam String longitude, @RequestParam String latitude,
+                                                 @RequestParam String elevation, @RequestParam String azimuth,
+                                                 @RequestParam String fieldOfView, @RequestParam String maxDistance,
+                                                 @RequestParam String imageWidth, @RequestParam String imageHeight,
+                                                 @RequestParam String samplingExponent){
+        PanoramaUserParameters params = new PanoramaUserParameters(longitude, latitude, elevation, azimuth,
+                fieldOfView, maxDistance, imageWidth, imageHeight, samplingExponent);
+
+        SseEmitter emitter = new SseEmitter(PROGRESSIVE_TIMEOUT);
+        Future<?> computation;
+        try {
+            computation = alps.computeProgressively(params, (image, stride) -> {
+                Map<String, Object> stage = new LinkedHashMap<>();
+                stage.put("stride", stride);
+                stage.put("width", params.width());
+                stage.put("height", params.height());
+                try {
+                    stage.put("image", ImageEncoder.pngDataUrl(image, params.width(), params.height()));
+                    emitter.send(SseEmitter.event().name("stage").data(stage, MediaType.APPLICATION_JSON));
+                    if (stride == 1){
+                        emitter.complete();
+                    }
+                }catch (IOException E){
+                    // The client is gone, so the computation is stopped
+                    throw new UncheckedIOException(E);
+                }
+            }, emitter::completeWithError);
+        }catch (RejectedExecutionException E){
+            throw serverBusy(E);
+        }
+        emitter.onTimeout(() -> computation.cancel(true));
+        emitter.onCompletion(() -> computation.cancel(true));
+        return emitter;
+    }
+
+    /**
+     * Streams a panorama as server-sent events while it is being computed, one "columns" event per batch of
+     * neighbouring columns, in the order of the columns. Each event holds the index of the first column of the batch
+     * and the size of the batch, followed either by its image as a PNG data URL (format "image"), or by the distance
+     * and slope of each of its pixels, row by row (format "samples"). The stream ends after the last batch
+     *
+     * @param format the format of the batches, "image" or "samples"
+     * @return the emitter of the events
+     */
+    @GetMapping(value = "/streamPanorama", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPanorama(@RequestParam String longitude, @RequestParam String latitude,
+                                     @RequestParam String elevation, @RequestParam String azimuth,
+                                     @RequestParam String fieldOfView, @RequestParam String maxDistance,
+                                     @RequestParam String imageWidth, @RequestParam String imageHeight,
+                                     @RequestParam String samplingExponent,
+                                     @RequestParam(defaultValue = "image") String format){
+        if (!format.equals("image") && !format.equals("samples")){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The format must be image or samples");
+        }
+        PanoramaUserParameters params = new PanoramaUserParameters(longitude, latitude, elevation, azimuth,
+                fieldOfView, maxDistance, imageWidth, imageHeight, samplingExponent);
+
+        SseEmitter emitter = new SseEmitter(PROGRESSIVE_TIMEOUT);
+        Future<?> computation;
+        try {
+            computation = alps.computeColumnBatches(params, (batch, from) -> {
+                int width = batch.parameters().width(), height = batch.parameters().height();
+                Map<String, Object> columns = new LinkedHashMap<>();
+                columns.put("x", from);
+                columns.put("width", width);
+                columns.put("height", height);
+                try {
+                    if (format.equals("image")){
+                        columns.put("image", ImageEncoder.pngDataUrl(alps.paint(batch), width, height));
+                    } else {
+                        float[] distances = new float[width * height], slopes = new float[width * height];
+                        for (int y = 0; y < height; ++y){
+                            for (int x = 0; x < width; ++x){
+                                distances[y * width + x] = batch.distanceAt(x, y);
+                                slopes[y * width + x] = batch.slopeAt(x, y);
+                            }
+                        }
+                        columns.put("distances", distances);
+                        columns.put("slopes", slopes);
+                    }
+                    emitter.send(SseEmitter.event().name("columns").data(columns, MediaType.APPLICATION_JSON));
+                    if (from + width == params.width()){
+                        emitter.complete();
+                    }
+                }catch (IOException E){
+                    // The client is gone, so the computation is stopped
+                    throw new UncheckedIOException(E);
+                }
+            }, emitter::completeWithError);
+        }catch (RejectedExecutionException E){
+            throw serverBusy(E);
+        }
+        emitter.onTimeout(() -> computation.cancel(true));
+        emitter.onCompletion(() -> computation.cancel(true));
+        return emitter;
+    }
+
+    /**
+     * Computes the image of a panorama and streams it to the response, in the preferred binary format of the client
+     *
+     * @param params the parameters of the panorama
+     * @param accept the media types accepted by the client
+     * @param response the response in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    private void writeImage(PanoramaUserParameters params, String accept, HttpServletResponse response)
+            throws IOException {
+        writeEncoded(image(params), params.width(), params.height(), accept, response);
+    }
+
+    /**
+     * Gives the image of a panorama, from the cache or computed
+     *
+     * @param params the parameters of the panorama
+     * @return the packed ARGB color of each pixel, row by row
+     * @throws ResponseStatusException with a 503 status if too many panoramas are being computed, 400 if the
+     *                                 parameters are invalid, and 500 if the computation failed
+     */
+    private int[] image(PanoramaUserParameters params){
+        try {
+            return alps.computeImage(params);
+        }catch (RejectedExecutionException E){
+            throw serverBusy(E);
+        }catch (IllegalArgumentException E){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, E.getMessage(), E);
+        }catch (Exception E){
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, E.getMessage(), E);
+        }
+    }
+
+    /**
+     * Writes an image to the response, in the preferred binary format of the client
+     *
+     * @param image the packed ARGB color of each pixel, row by row
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param accept the media types accepted by the client
+     * @param response the response in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    private static void writeEncoded(int[] image, int width, int height, String accept, HttpServletResponse response)
+            throws IOException {
+        boolean png = prefersPng(accept);
+        response.setContentType(png ? MediaType.IMAGE_PNG_VALUE : ImageEncoder.RAW_RGBA);
+        response.setHeader("X-Image-Width", Integer.toString(width));
+        response.setHeader("X-Image-Height", Integer.toString(height));
+        OutputStream out = response.getOutputStream();
+        if (png){
+            ImageEncoder.writePng(image, width, height, out);
+        } else {
+            ImageEncoder.writeRaw(image, out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Checks whether a client prefers a PNG image over raw bytes
+     *
+     * @param accept the media types accepted by the client
+     * @return true if the PNG format comes first in the media types accepted, false otherwise
+     */
+    private static boolean prefersPng(String accept){
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted){
+            if (type.isCompatibleWith(MediaType.IMAGE_PNG)){
+                return true;
+            }
+            if (type.isCompatibleWith(MediaType.APPLICATION_OCTET_STREAM)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Answers with a 400 status the requests whose parameters are invalid (e.g. not numbers, or out of range), in
+     * whatever format the client accepts
+     *
+     * @param E the exception thrown while handling the request
+     * @param response the response in which the error is written
+     * @throws IOException if the error could not be written
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public void badRequest(IllegalArgumentException E, HttpServletResponse response) throws IOException {
+        response.sendError(HttpStatus.BAD_REQUEST.value(), E.getMessage());
+    }
+
+    /**
+     * Creates the exception answering with a 503 status when too many panoramas are being computed
+     *
+     * @param cause the rejection of the computation
+     * @return the exception to throw
+     */
+    private static ResponseStatusException serverBusy(RejectedExecutionException cause){
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                "Too many panoramas are being computed, please retry later", cause);
+    }
+
+    /**
+     * Submits the computation of a panorama as a job, answering right away with its identifier and status. The job
+     * is cancelled if it is not polled for some time
+     *
+     * @return the status of the job, with a 202 status and the location of the job
+     */
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submitJob(@RequestParam String longitude, @RequestParam String latitude,
+                                                         @RequestParam String elevation, @RequestParam String azimuth,
+                                                         @RequestParam String fieldOfView,
+                                                         @RequestParam String maxDistance,
+                                                         @RequestParam String imageWidth,
+                                                         @RequestParam String imageHeight,
+                                                         @RequestParam String samplingExponent){
+        PanoramaJob job;
+        try {
+            job = jobs.submit(new PanoramaUserParameters(longitude, latitude, elevation, azimuth, fieldOfView,
+                    maxDistance, imageWidth, imageHeight, samplingExponent));
+        }catch (IllegalArgumentException E){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, E.getMessage(), E);
+        }catch (RejectedExecutionException E){
+            throw serverBusy(E);
+        }
+        return ResponseEntity.accepted().location(URI.create("/jobs/" + job.getId())).body(jobStatus(job));
+    }
+
+    /**
+     * Returns the status of a job: its identifier, its state (QUEUED, RUNNING, DONE, FAILED or CANCELLED), the
+     * fraction and number of columns computed, and the error which stopped it if it failed
+     *
+     * @param id the identifier of the job
+     * @return the status of the job
+     */
+    @GetMapping("/jobs/{id}")
+    public Map<String, Object> getJob(@PathVariable String id){
+        return jobStatus(job(id));
+    }
+
+    /**
+     * Returns the image of a job which is done, as the red, green, blue and alpha values of each pixel
+     *
+     * @param id the identifier of the job
+     * @return the pixels of the image
+     */
+    @GetMapping("/jobs/{id}/result")
+    public int[] getJobResult(@PathVariable String id){
+        return Alpano.toRgba(jobImage(job(id)));
+    }
+
+    /**
+     * Writes the image of a job which is done, as a PNG or as raw RGBA bytes depending on the Accept header
+     *
+     * @param id the identifier of the job
+     * @param accept the media types accepted by the client
+     * @param response the response in which the image is written
+     * @throws IOException if the image could not be written
+     */
+    @GetMapping(value = "/jobs/{id}/result", produces = {MediaType.IMAGE_PNG_VALUE, ImageEncoder.RAW_RGBA})
+    public void getBinaryJobResult(@PathVariable String id, @RequestHeader(HttpHeaders.ACCEPT) String accept,
+                                   HttpServletResponse response) throws IOException {
+        PanoramaJob job = job(id);
+        writeEncoded(jobImage(job), job.getParameters().width(), job.getParameters().height(), accept, response);
+    }
+
+    /**
+     * Cancels a job, which stops before the next column of its panorama
+     *
+     * @param id the identifier of the job
+     * @return the status of the job
+     */
+    @DeleteMapping("/jobs/{id}")
+    public Map<String, Object> cancelJob(@PathVariable String id){
+        PanoramaJob job = jobs.cancel(id);
+        if (job == null){
+            throw unknownJob(id);
+        }
+        return jobStatus(job);
+    }
+
+    /**
+     * Gives a job
+     *
+     * @param id the identifier of the job
+     * @return the job
+     * @throws ResponseStatusException with a 404 status if there is no such job
+     */
+    private PanoramaJob job(String id){
+        PanoramaJob job = jobs.get(id);
+        if (job == null){
+            throw unknownJob(id);
+        }
+        return job;
+    }
+
+    /**
+     * Gives the image of a job, from the cache of the images (or computed again if it was evicted since the job was
+     * done)
+     *
+     * @param job the job
+     * @return the packed ARGB colors of the image
+     * @throws ResponseStatusException with a 409 status if the job is not done yet, 410 if it was cancelled, and 400
+     *                                 or 500 if it failed
+     */
+    private int[] jobImage(PanoramaJob job){
+        switch (job.getStatus()){
+            case DONE:
+                return image(job.getParameters());
+            case CANCELLED:
+                throw new ResponseStatusException(HttpStatus.GONE, "The job was cancelled");
+            case FAILED:
+                Throwable error = job.getError();
+                throw new ResponseStatusException(error instanceof IllegalArgumentException ? HttpStatus.BAD_REQUEST
+                        : HttpStatus.INTERNAL_SERVER_ERROR, error.getMessage(), error);
+            default:
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "The job is not done yet");
+        }
+    }
+
+    /**
+     * Gives the status of a job
+     *
+     * @param job the job
+     * @return the status, by name
+     */
+    private static Map<String, Object> jobStatus(PanoramaJob job){
+        Map<String, Object> status = new LinkedHashMap<>();
+        PanoramaJob.Status state = job.getStatus();
+        status.put("id", job.getId());
+        status.put("status", state);
+        status.put("progress", job.getProgress());
+        if (state == PanoramaJob.Status.FAILED){
+            status.put("error", job.getError().getMessage());
+        }
+        return status;
+    }
+
+    /**
+     * Creates the exception answering with a 404 status when a job does not exist
+     *
+     * @param id the identifier of the job
+     * @return the exception to throw
+     */
+    private static ResponseStatusException unknownJob(String id){
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "There is no job " + id);
+    }
+
+    /**
+     * Returns the elevations of several points, given in the order of the points
+     *
+     * @param query the longitudes and latitudes of the points, in degrees
+     * @return the elevations of the points, in meters
+     */
+    @PostMapping("/elevations")
+    public double[] elevations(@RequestBody ElevationQuery query){
+        if (query.getLongitudes() == null || query.getLatitudes() == null
+                || query.getLongitudes().length != query.getLatitudes().length){
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "The query must contain as many longitudes as latitudes");
+        }
+        return alps.elevationsAt(query.getLongitudes(), query.getLatitudes());
+    }
+
+    /**
+     * Returns the statistics of the cache of computed images
+     *
+     * @return the hits, misses, evictions, number of entries and size in bytes of the cache
+     */
+    @GetMapping("/cacheStatistics")
+    public Map<String, Long> cacheStatistics(){
+        return alps.getCacheStatistics();
+    }
+
 }
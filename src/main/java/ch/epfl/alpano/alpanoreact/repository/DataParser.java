@@ -2,9 +2,12 @@ package ch.epfl.alpano.alpanoreact.repository;
 
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
-import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
+import ch.epfl.alpano.dem.HgtTileCatalog;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
+import ch.epfl.alpano.dem.SyntheticDiscreteElevationModel;
 import ch.epfl.alpano.summit.Summit;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import java.io.File;
@@ -16,45 +19,42 @@ import static ch.epfl.alpano.summit.GazetteerParser.readSummitsFrom;
 @Repository
 public class DataParser {
 
+    /** The south-west corner (in degrees) of a synthetic DEM of a single tile, which grows around it*/
+    private static final int SYNTHETIC_LONGITUDE = 7, SYNTHETIC_LATITUDE = 46;
+
+    /** The Discrete Elevation Model used in this application*/
+    private final DiscreteElevationModel dem;
+
     /** The Continuous Elevation Model used in this application*/
     private final ContinuousElevationModel cem;
 
+    /** The pyramid of the maximum elevations of the above Discrete Elevation Model*/
+    private final MaxElevationPyramid pyramid;
+
     /** The List of Summits used for the above Continuous Elevation Model*/
     private final List<Summit> summits;
 
-    /** Constructs a new DataParser */
-    public DataParser() throws IOException {
-        cem = loadCEM();
-        summits = readSummitsFrom(new File("alps.txt"));
-    }
-
     /**
-     * Constructs a ContinuousElevationModel based on HGT Files that covers the Swiss alps
+     * Constructs a new DataParser
      *
-     * @return the constructed CEM
+     * @param demDirectory the directory containing the HGT files of the DEM
+     * @param maxMappedTiles the maximum number of HGT files mapped in memory at the same time
+     * @param syntheticTiles the number of tiles of a side of the synthetic DEM used instead of the HGT files, 0 to read the HGT files
+     * @param syntheticSeed the seed of the synthetic DEM
      */
-    private ContinuousElevationModel loadCEM() {
-        HgtDiscreteElevationModel hgt1 = new HgtDiscreteElevationModel(
-                new File("N45E006.hgt"));
-        HgtDiscreteElevationModel hgt2 = new HgtDiscreteElevationModel(
-                new File("N45E007.hgt"));
-        HgtDiscreteElevationModel hgt3 = new HgtDiscreteElevationModel(
-                new File("N45E008.hgt"));
-        HgtDiscreteElevationModel hgt4 = new HgtDiscreteElevationModel(
-                new File("N45E009.hgt"));
-        HgtDiscreteElevationModel hgt5 = new HgtDiscreteElevationModel(
-                new File("N46E006.hgt"));
-        HgtDiscreteElevationModel hgt6 = new HgtDiscreteElevationModel(
-                new File("N46E007.hgt"));
-        HgtDiscreteElevationModel hgt7 = new HgtDiscreteElevationModel(
-                new File("N46E008.hgt"));
-        HgtDiscreteElevationModel hgt8 = new HgtDiscreteElevationModel(
-                new File("N46E009.hgt"));
-
-        DiscreteElevationModel dem = hgt1.union(hgt2).union(hgt3).union(hgt4)
-                .union(hgt5.union(hgt6).union(hgt7).union(hgt8));
-
-        return new ContinuousElevationModel(dem);
+    public DataParser(@Value("${alpano.dem.directory:.}") String demDirectory,
+                      @Value("${alpano.dem.max-mapped-tiles:32}") int maxMappedTiles,
+                      @Value("${alpano.dem.synthetic-tiles:0}") int syntheticTiles,
+                      @Value("${alpano.dem.synthetic-seed:0}") long syntheticSeed) throws IOException {
+        if (syntheticTiles > 0){
+            int offset = (syntheticTiles - 1) / 2;
+            dem = new SyntheticDiscreteElevationModel(syntheticSeed, SYNTHETIC_LONGITUDE - offset, SYNTHETIC_LATITUDE - offset, syntheticTiles);
+        } else {
+            dem = new HgtTileCatalog(new File(demDirectory), maxMappedTiles);
+        }
+        cem = new ContinuousElevationModel(dem);
+        pyramid = new MaxElevationPyramid(dem);
+        summits = readSummitsFrom(new File("alps.txt"));
     }
 
     /**
@@ -66,6 +66,15 @@ public class DataParser {
         return cem;
     }
 
+    /**
+     * Gives the pyramid of the maximum elevations of the DEM, used to skip the empty space below the rays
+     *
+     * @return the pyramid of the maximum elevations
+     */
+    public MaxElevationPyramid getElevationPyramid(){
+        return pyramid;
+    }
+
     /**
      *
      *
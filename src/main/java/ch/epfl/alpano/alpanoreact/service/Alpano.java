@@ -3,22 +3,37 @@ package ch.epfl.alpano.alpanoreact.service;
 import ch.epfl.alpano.*;
 import ch.epfl.alpano.alpanoreact.repository.DataParser;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfileCache;
+import ch.epfl.alpano.image.ArgbPainter;
 import ch.epfl.alpano.image.ChannelPainter;
-import ch.epfl.alpano.image.ImagePainter;
+import ch.epfl.alpano.image.ImageRenderer;
 import ch.epfl.alpano.summit.Summit;
 
-import javafx.embed.swing.SwingFXUtils;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import javax.annotation.PostConstruct;
-import javax.imageio.ImageIO;
+import javax.annotation.PreDestroy;
 
-import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
 
+import static ch.epfl.alpano.Preconditions.checkArgument;
 import static java.lang.Math.toRadians;
 
 @Service
@@ -28,23 +43,102 @@ public class Alpano {
     public final static int STANDARD_MAX_DISTANCE = 300, STANDARD_WIDTH = 1080,
             STANDARD_HEIGHT = 480, STANDARD_SAMPLING_EXPONENT = 0;
 
+    /** The largest super-sampling exponent accepted, a panorama then being computed with 16 times as many pixels */
+    public final static int MAX_SAMPLING_EXPONENT = 2;
+
+    /** The number of bytes taken by each point of a panorama: its distance, longitude, latitude, elevation and slope */
+    private final static int SEED_BYTES_PER_POINT = 5 * Float.BYTES;
+
     /**  */
     @Autowired
     private DataParser data;
 
+    /** The number of threads computing a panorama, 0 to use all of the available processors */
+    @Value("${alpano.compute.parallelism:0}")
+    private int parallelism;
+
+    /** The maximum size, in bytes, of the images kept in the cache */
+    @Value("${alpano.cache.max-bytes:268435456}")
+    private long cacheMaxBytes;
+
+    /** The maximum size, in bytes, of the elevation profiles kept in the cache */
+    @Value("${alpano.profiles.max-bytes:67108864}")
+    private long profilesMaxBytes;
+
+    /** The largest fraction of the angle between two columns to a multiple of which the azimuths of the cached elevation profiles are rounded */
+    @Value("${alpano.profiles.column-fraction:0.5}")
+    private double columnFraction;
+
+    /** Whether the panoramas are cropped from the 360° panoramas of their observers, so that panning only copies columns */
+    @Value("${alpano.cylinders.enabled:false}")
+    private boolean cylindersEnabled;
+
+    /** The maximum size, in bytes, of the 360° panoramas kept in the cache */
+    @Value("${alpano.cylinders.max-bytes:536870912}")
+    private long cylindersMaxBytes;
+
+    /** The maximum size, in bytes, of the panoramas kept to seed the next ones of the same observer */
+    @Value("${alpano.seeds.max-bytes:134217728}")
+    private long seedsMaxBytes;
+
+    /** The stride of the first stage of the progressive computations, every n-th column and row being computed */
+    @Value("${alpano.progressive.coarsest-stride:8}")
+    private int coarsestStride;
+
+    /** The number of columns of the batches in which the streamed panoramas are computed */
+    @Value("${alpano.streaming.columns-per-batch:64}")
+    private int columnsPerBatch;
+
+    /** The maximum number of panoramas computed at the same time */
+    @Value("${alpano.executor.threads:2}")
+    private int executorThreads;
+
+    /** The maximum number of panoramas waiting to be computed, beyond which requests are rejected */
+    @Value("${alpano.executor.queue-depth:16}")
+    private int executorQueueDepth;
+
+    /** The time, in milliseconds, a request waits for the image of a panorama before being rejected */
+    @Value("${alpano.coalescing.wait-ms:60000}")
+    private long imageWaitMs;
+
+    /** The images already computed (packed ARGB colors), by the parameters of their panorama */
+    private LruCache<PanoramaUserParameters, int[]> images;
+
+    /** The images being computed, by the parameters of their panorama, shared by the identical requests and jobs */
+    private final Map<PanoramaUserParameters, ImageFlight> inFlight = new ConcurrentHashMap<>();
+
+    /** The number of requests and jobs which waited for the computation of an identical one */
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /** The executor computing the panoramas, outside of the threads serving the requests */
+    private ThreadPoolExecutor executor;
+
+    /** The pool shared by the threads computing the columns of a panorama and painting the rows of its image */
+    private ForkJoinPool pool;
+
+    /** The continuous DEM from which the panoramas are computed */
+    private ContinuousElevationModel cem;
+
     /**  */
     private PanoramaComputer pComputer;
 
-    /**  */
-    private List<Summit> summits;
+    /** The 360° panoramas from which the panoramas are cropped, null if they are computed directly */
+    private CylindricalPanoramaCache cylinders;
+
+    /**
+     * The panoramas computed last, whose columns are copied into the next ones when only their azimuth changed, by
+     * their observer, maximum distance, height and angle between two columns
+     */
+    private LruCache<List<Object>, Panorama> seeds;
+
+    /** The renderer painting the images of the panoramas */
+    private ImageRenderer renderer;
 
     /**  */
-    private Panorama panorama;
+    private List<Summit> summits;
 
     private final static PanoramaUserParameters pano = PredefinedPanoramas.Niesen;
 
-    private final static PanoramaParameters PARAMS = pano.panoramaDisplayParameters();
-
     /**
      *
      */
@@ -57,9 +151,28 @@ public class Alpano {
      */
     @PostConstruct
     private void loadData(){
-        ContinuousElevationModel cem = data.getCEM();
+        cem = data.getCEM();
         summits = data.getSummits();
-        pComputer = new PanoramaComputer(cem);
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+        ElevationProfileCache profiles = new ElevationProfileCache(cem, profilesMaxBytes, columnFraction);
+        pComputer = new PanoramaComputer(profiles, data.getElevationPyramid(), pool);
+        cylinders = cylindersEnabled ? new CylindricalPanoramaCache(pComputer, cylindersMaxBytes) : null;
+        renderer = new ImageRenderer(pool);
+        images = new LruCache<>(cacheMaxBytes, image -> (long) Integer.BYTES * image.length);
+        seeds = new LruCache<>(seedsMaxBytes, p -> (long) SEED_BYTES_PER_POINT * p.parameters().width()
+                * p.parameters().height());
+        executor = new ThreadPoolExecutor(executorThreads, executorThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(executorQueueDepth), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Stops the computations in progress and rejects the ones still waiting
+     */
+    @PreDestroy
+    private void shutdown(){
+        executor.shutdownNow();
+        pool.shutdownNow();
     }
 
     /**
@@ -67,70 +180,358 @@ public class Alpano {
      * @return
      */
     public int[] computePanorama() throws Exception{
-        panorama = pComputer.computePanorama(PARAMS);
-        return compute(panorama);
+        return computePanorama(pano);
     }
 
+    /**
+     * Gives the parameters of the panorama computed by default
+     *
+     * @return the parameters of the default panorama
+     */
+    public PanoramaUserParameters getDefaultParameters(){
+        return pano;
+    }
+
+    /**
+     * Gives the image of a panorama as the red, green, blue and alpha values of each pixel, row by row
+     *
+     * @param userParams the parameters of the panorama
+     * @return the pixels of the image
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed
+     */
     public int[] computePanorama(PanoramaUserParameters userParams) throws Exception{
-        PanoramaParameters pp = userParams.panoramaDisplayParameters();
-        panorama = pComputer.computePanorama(pp);
-        return compute(panorama);
+        return toRgba(computeImage(userParams));
     }
 
-    private int[] compute(Panorama p){
-        int width = p.parameters().width();
-        int height = p.parameters().height();
-        ImagePainter painter = getDefaultImagePainter();
-
-        int[] image = new int[height * width * 4];
-        for (int h = 0; h < height; ++h){
-            for (int w = 0; w < width; ++w){
-                Color c = painter.colorAt(w, h);
-                int index = (h * width * 4) + (w * 4);
-                image[index] = (int) Math.round(c.getRed() * 255);
-                image[index + 1] = (int) Math.round(c.getGreen() * 255);
-                image[index + 2] = (int) Math.round(c.getBlue() * 255);
-                image[index + 3] = 255;
-            }
+    /**
+     * Unpacks the colors of an image into the red, green, blue and alpha values of each pixel
+     *
+     * @param argb the packed ARGB color of each pixel, row by row
+     * @return the red, green, blue and alpha values of each pixel, row by row
+     */
+    public static int[] toRgba(int[] argb){
+        int[] image = new int[argb.length * 4];
+        for (int i = 0; i < argb.length; ++i){
+            image[4 * i] = (argb[i] >> 16) & 0xFF;
+            image[4 * i + 1] = (argb[i] >> 8) & 0xFF;
+            image[4 * i + 2] = argb[i] & 0xFF;
+            image[4 * i + 3] = argb[i] >>> 24;
         }
         return image;
     }
 
     /**
+     * Gives the image of a panorama as the packed ARGB color of each pixel, row by row, computing it only if it is
+     * not in the cache. Identical requests made while it is computed wait for the same computation. The array
+     * returned may be shared with other callers, and must thus not be modified
      *
-     * @return
+     * @param userParams the parameters of the panorama
+     * @return the pixels of the image
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed, or if the image
+     *                                    was not computed in time (its computation then goes on for the next requests)
      */
-    public List<Summit> getSummits(){
-        return summits;
+    public int[] computeImage(PanoramaUserParameters userParams) throws Exception{
+        checkSamplingExponent(userParams);
+        try {
+            return board(userParams).image().get(imageWaitMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            throw new RejectedExecutionException("The image was not computed within " + imageWaitMs + " ms", e);
+        }
+    }
+
+    /**
+     * Computes the image of a panorama in the executor for a job, unless it is in the cache. The job shares the
+     * computation, and its result, with the identical requests and jobs, and can follow its progress through its
+     * monitor; the image itself is kept in the cache like the other ones
+     *
+     * @param userParams the parameters of the panorama
+     * @return the flight computing the image, already landed if the image is in the cache
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed
+     * @throws IllegalArgumentException if the super-sampling exponent is not accepted
+     */
+    ImageFlight submitImage(PanoramaUserParameters userParams){
+        checkSamplingExponent(userParams);
+        return board(userParams);
     }
 
     /**
-     * Returns the most recent panorama computed
+     * Joins the flight computing the image of a panorama, starting it in the executor if there is none
      *
-     * @return the Panorama
+     * @param userParams the parameters of the panorama
+     * @return the flight, already landed if the image is in the cache
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed
      */
-    private Panorama getPanorama() {
-        return panorama;
+    private ImageFlight board(PanoramaUserParameters userParams){
+        int[] image = images.get(userParams);
+        while (image == null) {
+            // Identical requests arriving while the image is computed wait for the same computation
+            ImageFlight created = new ImageFlight();
+            ImageFlight flight = inFlight.putIfAbsent(userParams, created);
+            if (flight != null) {
+                if (flight.join()) {
+                    coalesced.incrementAndGet();
+                    return flight;
+                }
+                // All of the jobs waiting for that flight left it, and it is being cancelled
+                inFlight.remove(userParams, flight);
+                continue;
+            }
+            // The image may have been cached, and its flight landed, since the cache was looked up
+            image = images.get(userParams);
+            if (image != null) {
+                inFlight.remove(userParams, created);
+                break;
+            }
+            try {
+                executor.execute(() -> fly(userParams, created));
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(userParams, created);
+                created.image().completeExceptionally(e);
+                throw e;
+            }
+            return created;
+        }
+        ImageFlight landed = new ImageFlight();
+        landed.image().complete(image);
+        return landed;
     }
 
     /**
-     * Generates a default ImagePainter to create the image for this
+     * Computes the image of a panorama for all of the requests and jobs waiting for it, keeping it in the cache
+     * before they are given it
      *
-     * @return the default ImagePainter
+     * @param userParams the parameters of the panorama
+     * @param flight the flight completed with the image
      */
-    private ImagePainter getDefaultImagePainter() {
-        ChannelPainter distance = getPanorama()::distanceAt;
-        ChannelPainter slope = getPanorama()::slopeAt;
+    private void fly(PanoramaUserParameters userParams, ImageFlight flight){
+        try {
+            int[] image = render(userParams, flight.monitor());
+            images.put(userParams, image);
+            flight.image().complete(image);
+        } catch (Throwable t) {
+            flight.image().completeExceptionally(t);
+        } finally {
+            inFlight.remove(userParams, flight);
+        }
+    }
+
+    /**
+     * Checks that the super-sampling exponent of a panorama is accepted
+     *
+     * @param userParams the parameters of the panorama
+     * @throws IllegalArgumentException if the exponent is negative or greater than MAX_SAMPLING_EXPONENT
+     */
+    private static void checkSamplingExponent(PanoramaUserParameters userParams){
+        checkArgument(userParams.superSamplingExponent() >= 0
+                        && userParams.superSamplingExponent() <= MAX_SAMPLING_EXPONENT,
+                "The super-sampling exponent must be between 0 and " + MAX_SAMPLING_EXPONENT);
+    }
+
+    /**
+     * Computes a panorama and its image. Everything the computation needs is local to it, so that several
+     * panoramas can be rendered at the same time. The panorama is computed with 2^n times as many columns and rows
+     * as the image, n being the super-sampling exponent, and its image is then reduced to anti-alias it. Whether it
+     * is computed from scratch, from a seed or cropped from a 360° panorama, its columns are reported to the monitor
+     * as they are computed or reused, and the computation stops before the next one when the monitor is cancelled
+     *
+     * @param userParams the parameters of the panorama
+     * @param monitor the monitor of the computation
+     * @return the packed ARGB colors of the pixels of the image
+     * @throws CancellationException if the monitor was cancelled
+     */
+    private int[] render(PanoramaUserParameters userParams, ComputationMonitor monitor){
+        if (monitor.isCancelled()) {
+            throw new CancellationException("The computation of the image was cancelled");
+        }
+        PanoramaParameters pp = userParams.panoramaParameters();
+        if (cylinders != null) {
+            return paint(cylinders.panorama(pp, monitor), userParams.superSamplingExponent());
+        }
+        List<Object> key = seedKey(pp);
+        Panorama seed = seeds.get(key);
+        Panorama panorama = seed == null ? pComputer.computePanorama(pp, monitor)
+                : pComputer.computePanorama(pp, seed, monitor);
+        seeds.put(key, panorama);
+        return paint(panorama, userParams.superSamplingExponent());
+    }
+
+    /**
+     * Gives the key of the seeds of a panorama: the panoramas which only differ from it by their center azimuth
+     *
+     * @param pp the parameters of the panorama
+     * @return the key of its seeds
+     */
+    private static List<Object> seedKey(PanoramaParameters pp){
+        return Arrays.asList(pp.observerPosition().longitude(), pp.observerPosition().latitude(),
+                pp.observerElevation(), pp.maxDistance(), pp.height(), pp.horizontalFieldOfView() / (pp.width() - 1));
+    }
+
+    /**
+     * Computes the image of a panorama progressively in the executor, giving the image of each stage of increasing
+     * resolution to a consumer as soon as it is ready. The stages are computed at the resolution of the image, without
+     * super-sampling: the image of the last stage is thus only kept in the cache if the panorama is not
+     * super-sampled. If the image is already in the cache, it is given right away as the only stage
+     *
+     * @param userParams the parameters of the panorama
+     * @param stages the consumer of the packed ARGB colors of the image and of the stride of each stage, called by
+     *               the thread of the computation. An exception thrown by it stops the computation
+     * @param failures the consumer of the exception which stopped the computation before its last stage, if any
+     * @return the computation, whose cancellation stops it after the current stage
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed
+     * @throws IllegalArgumentException if the super-sampling exponent is not accepted
+     */
+    public Future<?> computeProgressively(PanoramaUserParameters userParams, ObjIntConsumer<int[]> stages,
+                                          Consumer<Exception> failures){
+        checkSamplingExponent(userParams);
+        int[] cached = images.get(userParams);
+        return executor.submit(() -> {
+            try {
+                if (cached != null) {
+                    stages.accept(cached, 1);
+                    return;
+                }
+                PanoramaParameters pp = userParams.panoramaDisplayParameters();
+                Panorama panorama = pComputer.computePanorama(pp, coarsestStride, (stage, stride) -> {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException("The progressive computation was cancelled");
+                    }
+                    int[] image = paint(stage);
+                    if (stride == 1 && userParams.superSamplingExponent() == 0) {
+                        images.put(userParams, image);
+                    }
+                    stages.accept(image, stride);
+                });
+                seeds.put(seedKey(pp), panorama);
+            } catch (RuntimeException e) {
+                failures.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Computes a panorama in the executor by batches of neighbouring columns, giving each batch to a consumer as soon
+     * as it is computed, so that only one batch is held at a time
+     *
+     * @param userParams the parameters of the panorama
+     * @param batches the consumer of the panorama of each batch and of the index of its first column in the whole
+     *                panorama, called by the thread of the computation in the order of the columns. An exception
+     *                thrown by it stops the computation
+     * @param failures the consumer of the exception which stopped the computation before its last batch, if any
+     * @return the computation, whose cancellation stops it after the current batch
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed
+     * @throws IllegalArgumentException if the super-sampling exponent is not accepted
+     */
+    public Future<?> computeColumnBatches(PanoramaUserParameters userParams, ObjIntConsumer<Panorama> batches,
+                                          Consumer<Exception> failures){
+        checkSamplingExponent(userParams);
+        return executor.submit(() -> {
+            try {
+                PanoramaParameters pp = userParams.panoramaDisplayParameters();
+                pComputer.computeColumnBatches(pp, columnsPerBatch, (batch, from) -> {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException("The streamed computation was cancelled");
+                    }
+                    batches.accept(batch, from);
+                });
+            } catch (RuntimeException e) {
+                failures.accept(e);
+            }
+        });
+    }
+
+    /**
+     * Gives the elevations of several points
+     *
+     * @param longitudes the longitudes of the points, in degrees
+     * @param latitudes the latitudes of the points, in degrees
+     * @return the elevations of the points, in meters, in the order of the points
+     * @throws IllegalArgumentException if there are not as many longitudes as latitudes
+     */
+    public double[] elevationsAt(double[] longitudes, double[] latitudes){
+        checkArgument(longitudes.length == latitudes.length, "There are not as many longitudes as latitudes");
+        double[] lons = new double[longitudes.length];
+        double[] lats = new double[latitudes.length];
+        for (int i = 0; i < lons.length; ++i){
+            lons[i] = toRadians(longitudes[i]);
+            lats[i] = toRadians(latitudes[i]);
+        }
+        double[] elevations = new double[lons.length];
+        cem.elevationsAt(lons, lats, elevations);
+        return elevations;
+    }
+
+    /**
+     * Gives the statistics of the cache of images
+     *
+     * @return the statistics of the cache, by name
+     */
+    public Map<String, Long> getCacheStatistics(){
+        Map<String, Long> statistics = new LinkedHashMap<>();
+        statistics.put("hits", images.hits());
+        statistics.put("misses", images.misses());
+        statistics.put("evictions", images.evictions());
+        statistics.put("entries", (long) images.size());
+        statistics.put("bytes", images.weight());
+        statistics.put("maxBytes", images.capacity());
+        statistics.put("coalesced", coalesced.get());
+        statistics.put("inFlight", (long) inFlight.size());
+        statistics.put("seeds", (long) seeds.size());
+        statistics.put("seedBytes", seeds.weight());
+        return statistics;
+    }
+
+    /**
+     * Paints the image of a super-sampled panorama with the default painter, and reduces it to the size of the
+     * displayed image by averaging the colors of the blocks of pixels computed for each displayed pixel
+     *
+     * @param p the panorama, with 2^n times as many columns and rows as the displayed image
+     * @param superSamplingExponent the exponent n
+     * @return the packed ARGB colors of the pixels of the displayed image, row by row
+     */
+    private int[] paint(Panorama p, int superSamplingExponent){
+        int[] image = paint(p);
+        return superSamplingExponent == 0 ? image : renderer.downsample(image, p.parameters().width(),
+                p.parameters().height(), 1 << superSamplingExponent);
+    }
+
+    /**
+     * Paints the image of a panorama with the default painter
+     *
+     * @param p the panorama
+     * @return the packed ARGB colors of the pixels of the image, row by row
+     */
+    public int[] paint(Panorama p){
+        int width = p.parameters().width();
+        int height = p.parameters().height();
+        return renderer.render(getDefaultImagePainter(p), width, height);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public List<Summit> getSummits(){
+        return summits;
+    }
+
+    /**
+     * Generates a default painter to create the image of a panorama
+     *
+     * @param panorama the panorama to paint
+     * @return the default painter, which paints opaque images
+     */
+    public static ArgbPainter getDefaultImagePainter(Panorama panorama) {
+        ChannelPainter distance = panorama::distanceAt;
+        ChannelPainter slope = panorama::slopeAt;
         ChannelPainter hue = distance.div(100000).cycling().mul(360);
         ChannelPainter saturation = distance.div(200000).clamped().inverted();
         ChannelPainter brightness = slope.mul(2).div((float) Math.PI).inverted()
                 .mul(0.7f).add(0.3f);
-        ChannelPainter opacity = distance
-                .map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+        ChannelPainter opacity = (x, y) -> 1;
 
-        return ImagePainter.hsb(hue, saturation, brightness, opacity);
+        return ArgbPainter.hsb(hue, saturation, brightness, opacity);
     }
 
-
-
 }
@@ -0,0 +1,65 @@
+package ch.epfl.alpano.alpanoreact.service;
+
+import ch.epfl.alpano.ComputationMonitor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents the computation of the image of a panorama, shared by the identical requests and jobs made while it
+ * runs. The requests never give up on it, so that it is only cancelled once all of the jobs waiting for it were
+ * cancelled
+ */
+final class ImageFlight {
+
+    /** The packed ARGB colors of the image, once computed */
+    private final CompletableFuture<int[]> image = new CompletableFuture<>();
+
+    /** The monitor of the computation */
+    private final ComputationMonitor monitor = new ComputationMonitor();
+
+    /** The number of requests and jobs waiting for the image, 0 once all of them left */
+    private final AtomicInteger waiting = new AtomicInteger(1);
+
+    /**
+     * Gives the image computed
+     *
+     * @return the future completed with the packed ARGB colors of the image
+     */
+    CompletableFuture<int[]> image(){
+        return image;
+    }
+
+    /**
+     * Gives the monitor of the computation
+     *
+     * @return the monitor
+     */
+    ComputationMonitor monitor(){
+        return monitor;
+    }
+
+    /**
+     * Records that one more request or job waits for the image
+     *
+     * @return true if it joined the flight, false if all of the jobs already left it and it is being cancelled
+     */
+    boolean join(){
+        for (int n = waiting.get(); n > 0; n = waiting.get()) {
+            if (waiting.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records that a job no longer waits for the image, cancelling the computation if it was the last one
+     */
+    void leave(){
+        if (waiting.decrementAndGet() == 0) {
+            monitor.cancel();
+        }
+    }
+
+}
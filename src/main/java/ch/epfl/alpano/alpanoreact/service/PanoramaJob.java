@@ -0,0 +1,172 @@
+package ch.epfl.alpano.alpanoreact.service;
+
+import ch.epfl.alpano.ComputationMonitor;
+import ch.epfl.alpano.PanoramaUserParameters;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Represents the computation of the image of a panorama submitted as a job, whose status can be polled and which can
+ * be cancelled while it runs. The job shares the computation with the identical requests and jobs, and does not hold
+ * its image: once done, the image is fetched from the cache of the images like any other one
+ */
+public final class PanoramaJob {
+
+    /** The states of a job */
+    public enum Status {
+        /** Waiting to be computed */
+        QUEUED,
+        /** Being computed */
+        RUNNING,
+        /** Computed, with an image ready to be fetched (and computed again if it was evicted from the cache since) */
+        DONE,
+        /** Stopped by an error */
+        FAILED,
+        /** Cancelled, explicitly or because its client abandoned it */
+        CANCELLED
+    }
+
+    /** The identifier of the job */
+    private final String id;
+
+    /** The parameters of the panorama */
+    private final PanoramaUserParameters parameters;
+
+    /** The monitor of the computation */
+    private final ComputationMonitor monitor;
+
+    /** The end of the computation, which does not hold the image */
+    private final CompletableFuture<Void> done;
+
+    /** The flight computing the image, until the job is over */
+    private final AtomicReference<ImageFlight> flight;
+
+    /** The time, in milliseconds, at which the client last asked for the job */
+    private volatile long lastSeen;
+
+    /**
+     * Creates a job
+     *
+     * @param id the identifier of the job
+     * @param parameters the parameters of the panorama
+     * @param flight the flight computing the image, which the job joined
+     * @param now the current time, in milliseconds
+     */
+    PanoramaJob(String id, PanoramaUserParameters parameters, ImageFlight flight, long now){
+        this.id = id;
+        this.parameters = parameters;
+        this.monitor = flight.monitor();
+        this.flight = new AtomicReference<>(flight);
+        this.done = flight.image().thenApply(image -> null);
+        this.lastSeen = now;
+        done.whenComplete((nothing, error) -> this.flight.set(null));
+    }
+
+    /**
+     * Gives the identifier of the job
+     *
+     * @return the identifier
+     */
+    public String getId(){
+        return id;
+    }
+
+    /**
+     * Gives the parameters of the panorama
+     *
+     * @return the parameters
+     */
+    public PanoramaUserParameters getParameters(){
+        return parameters;
+    }
+
+    /**
+     * Gives the state of the job
+     *
+     * @return the status
+     */
+    public Status getStatus(){
+        if (done.isDone()){
+            try {
+                done.get();
+                return Status.DONE;
+            }catch (CancellationException E){
+                return Status.CANCELLED;
+            }catch (ExecutionException E){
+                return E.getCause() instanceof CancellationException ? Status.CANCELLED : Status.FAILED;
+            }catch (InterruptedException E){
+                Thread.currentThread().interrupt();
+            }
+        }
+        return monitor.totalColumns() == 0 ? Status.QUEUED : Status.RUNNING;
+    }
+
+    /**
+     * Gives the fraction of the columns of the panorama computed so far
+     *
+     * @return the progress, between 0 and 1
+     */
+    public double getProgress(){
+        return getStatus() == Status.DONE ? 1 : monitor.progress();
+    }
+
+    /**
+     * Gives the error which stopped the job
+     *
+     * @return the error, or null if the job did not fail
+     */
+    public Throwable getError(){
+        if (done.isDone() && !done.isCancelled()){
+            try {
+                done.get();
+            }catch (ExecutionException E){
+                return E.getCause();
+            }catch (InterruptedException E){
+                Thread.currentThread().interrupt();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Cancels the job. Its computation stops before the next column of its panorama, or before it starts if it is
+     * still queued, unless other requests or jobs are waiting for it
+     */
+    public void cancel(){
+        ImageFlight left = flight.getAndSet(null);
+        if (done.cancel(false) && left != null){
+            left.leave();
+        }
+    }
+
+    /**
+     * Records that the client asked for the job
+     *
+     * @param now the current time, in milliseconds
+     */
+    void seen(long now){
+        lastSeen = now;
+    }
+
+    /**
+     * Gives the time at which the client last asked for the job
+     *
+     * @return the time, in milliseconds
+     */
+    long lastSeen(){
+        return lastSeen;
+    }
+
+    /**
+     * Checks whether the job is over, whatever its outcome
+     *
+     * @return true if the job is done, failed or cancelled
+     */
+    boolean isOver(){
+        return done.isDone();
+    }
+
+}
@@ -0,0 +1,129 @@
+package ch.epfl.alpano.alpanoreact.service;
+
+import ch.epfl.alpano.PanoramaUserParameters;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the panoramas submitted as jobs. The jobs whose client stopped polling them are cancelled, and the
+ * jobs which are over are forgotten some time after they were last polled. Their images are kept in the cache of the
+ * images, not by the jobs
+ */
+@Service
+public class PanoramaJobs {
+
+    /** The time, in milliseconds, between two sweeps of the abandoned jobs */
+    private final static long SWEEP_PERIOD = 1000;
+
+    /** The service computing the images */
+    @Autowired
+    private Alpano alps;
+
+    /** The time, in milliseconds, after which a running job which was not polled is cancelled */
+    @Value("${alpano.jobs.abandon-after-ms:30000}")
+    private long abandonAfter;
+
+    /** The time, in milliseconds, during which a job which is over is kept after it was last polled */
+    @Value("${alpano.jobs.retain-ms:300000}")
+    private long retain;
+
+    /** The jobs, by identifier */
+    private final Map<String, PanoramaJob> jobs = new ConcurrentHashMap<>();
+
+    /** The executor sweeping the abandoned jobs */
+    private ScheduledExecutorService sweeper;
+
+    /**
+     * Starts sweeping the abandoned jobs
+     */
+    @PostConstruct
+    private void startSweeping(){
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "panorama-jobs-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis()), SWEEP_PERIOD, SWEEP_PERIOD,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sweeping and cancels the jobs still running
+     */
+    @PreDestroy
+    private void shutdown(){
+        sweeper.shutdownNow();
+        jobs.values().forEach(PanoramaJob::cancel);
+    }
+
+    /**
+     * Submits the computation of the image of a panorama
+     *
+     * @param params the parameters of the panorama
+     * @return the job
+     * @throws RejectedExecutionException if too many panoramas are already waiting to be computed
+     */
+    public PanoramaJob submit(PanoramaUserParameters params){
+        PanoramaJob job = new PanoramaJob(UUID.randomUUID().toString(), params, alps.submitImage(params),
+                System.currentTimeMillis());
+        jobs.put(job.getId(), job);
+        return job;
+    }
+
+    /**
+     * Gives a job, and records that its client is still interested in it
+     *
+     * @param id the identifier of the job
+     * @return the job, or null if there is no such job
+     */
+    public PanoramaJob get(String id){
+        PanoramaJob job = jobs.get(id);
+        if (job != null){
+            job.seen(System.currentTimeMillis());
+        }
+        return job;
+    }
+
+    /**
+     * Cancels a job
+     *
+     * @param id the identifier of the job
+     * @return the job, or null if there is no such job
+     */
+    public PanoramaJob cancel(String id){
+        PanoramaJob job = get(id);
+        if (job != null){
+            job.cancel();
+        }
+        return job;
+    }
+
+    /**
+     * Cancels the running jobs which were not polled for too long, and forgets the jobs which are over and were not
+     * polled for longer still
+     *
+     * @param now the current time, in milliseconds
+     */
+    void sweep(long now){
+        jobs.values().removeIf(job -> {
+            long idle = now - job.lastSeen();
+            if (!job.isOver() && idle > abandonAfter){
+                job.cancel();
+            }
+            return job.isOver() && idle > retain;
+        });
+    }
+
+}
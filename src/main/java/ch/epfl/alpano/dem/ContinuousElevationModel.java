@@ -6,24 +6,20 @@ package ch.epfl.alpano.dem;
  * @author Niels Poulsen
  */
 
+import static ch.epfl.alpano.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
-import static ch.epfl.alpano.Distance.toMeters;
 import static ch.epfl.alpano.Math2.bilerp;
-import static ch.epfl.alpano.Math2.sq;
-import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_RADIAN;
 import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
-import static java.lang.Math.acos;
 import static java.lang.Math.floor;
-import static java.lang.Math.sqrt;
+import static java.lang.Math.toDegrees;
+
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 
 import ch.epfl.alpano.GeoPoint;
 
 public final class ContinuousElevationModel {
 
-    /** The distance between two discrete samples (chosen arbitrarily) */
-    private final static double DISTANCE_PER_SAMPLES = toMeters(
-            1 / SAMPLES_PER_RADIAN);
-
     /** The discrete DEM that will be use to create a continuous one */
     private final DiscreteElevationModel dem_;
 
@@ -47,8 +43,22 @@ public final class ContinuousElevationModel {
      * @return the altitude of the GeoPoint in meters
      */
     public double elevationAt(GeoPoint p) {
-        double pIndexLong = sampleIndex(p.longitude());
-        double pIndexLat = sampleIndex(p.latitude());
+        return elevationAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Gives the altitude of a point contained in this, without requiring a
+     * GeoPoint to be allocated
+     * 
+     * @param longitude
+     *            the longitude of the point (in radians)
+     * @param latitude
+     *            the latitude of the point (in radians)
+     * @return the altitude of the point in meters
+     */
+    public double elevationAt(double longitude, double latitude) {
+        double pIndexLong = sampleIndex(longitude);
+        double pIndexLat = sampleIndex(latitude);
 
         double flooredLong = floor(pIndexLong);
         double flooredLat = floor(pIndexLat);
@@ -66,6 +76,72 @@ public final class ContinuousElevationModel {
                 pIndexLat - flooredLat);
     }
 
+    /**
+     * Gives the altitudes of several points at once. The points are evaluated
+     * tile by tile (1°x1° areas of the DEM) rather than in the order given,
+     * so that points far apart in a batch do not keep switching between tiles
+     * 
+     * @param longitudes
+     *            the longitudes of the points (in radians)
+     * @param latitudes
+     *            the latitudes of the points (in radians)
+     * @param elevations
+     *            the array in which the altitudes of the points (in meters)
+     *            are written, in the order of the points
+     * @throws IllegalArgumentException
+     *             if the three arrays do not have the same length
+     */
+    public void elevationsAt(double[] longitudes, double[] latitudes,
+            double[] elevations) {
+        checkArgument(longitudes.length == latitudes.length
+                && latitudes.length == elevations.length,
+                "The arrays do not have the same length");
+
+        // The index of each point, preceded by the one of its tile
+        long[] order = new long[longitudes.length];
+        for (int i = 0; i < order.length; ++i) {
+            long tileX = (long) floor(toDegrees(longitudes[i])) & 0xFFFF;
+            long tileY = (long) floor(toDegrees(latitudes[i])) & 0xFFFF;
+            order[i] = (tileY << 48) | (tileX << 32) | i;
+        }
+        Arrays.sort(order);
+
+        for (long key : order) {
+            int i = (int) key;
+            elevations[i] = elevationAt(longitudes[i], latitudes[i]);
+        }
+    }
+
+    /**
+     * Gives the altitudes of several points at once, read from the remaining
+     * values of buffers (whose positions are advanced past the points)
+     * 
+     * @param longitudes
+     *            the longitudes of the points (in radians)
+     * @param latitudes
+     *            the latitudes of the points (in radians)
+     * @param elevations
+     *            the buffer in which the altitudes of the points (in meters)
+     *            are written, in the order of the points
+     * @throws IllegalArgumentException
+     *             if the three buffers do not have the same number of
+     *             remaining values
+     * @see #elevationsAt(double[], double[], double[])
+     */
+    public void elevationsAt(DoubleBuffer longitudes, DoubleBuffer latitudes,
+            DoubleBuffer elevations) {
+        checkArgument(longitudes.remaining() == latitudes.remaining()
+                && latitudes.remaining() == elevations.remaining(),
+                "The buffers do not have the same number of remaining values");
+        double[] lons = new double[longitudes.remaining()];
+        double[] lats = new double[lons.length];
+        double[] results = new double[lons.length];
+        longitudes.get(lons);
+        latitudes.get(lats);
+        elevationsAt(lons, lats, results);
+        elevations.put(results);
+    }
+
     /**
      * Give the altitude of a (Geo)point contained in the discrete DEM
      * associated with this
@@ -93,16 +169,32 @@ public final class ContinuousElevationModel {
      * @return the slope of p in radians
      */
     public double slopeAt(GeoPoint p) {
-        int x = (int) floor(sampleIndex(p.longitude()));
-        int y = (int) floor(sampleIndex(p.latitude()));
+        return slopeAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Gives the slope of a point contained in this, without requiring a
+     * GeoPoint to be allocated
+     * 
+     * @param longitude
+     *            the longitude of the point (in radians)
+     * @param latitude
+     *            the latitude of the point (in radians)
+     * @return the slope of the point in radians
+     */
+    public double slopeAt(double longitude, double latitude) {
+        double indexLong = sampleIndex(longitude);
+        double indexLat = sampleIndex(latitude);
+        int x = (int) floor(indexLong);
+        int y = (int) floor(indexLat);
 
         double slope00 = slopeDiscreteDEM(x, y);
         double slope10 = slopeDiscreteDEM(x + 1, y);
         double slope01 = slopeDiscreteDEM(x, y + 1);
         double slope11 = slopeDiscreteDEM(x + 1, y + 1);
 
-        return bilerp(slope00, slope10, slope01, slope11,
-                sampleIndex(p.longitude()) - x, sampleIndex(p.latitude()) - y);
+        return bilerp(slope00, slope10, slope01, slope11, indexLong - x,
+                indexLat - y);
     }
 
     /**
@@ -117,11 +209,12 @@ public final class ContinuousElevationModel {
      *         indexSampleY) in radians
      */
     private double slopeDiscreteDEM(int indexSampleX, int indexSampleY) {
+        if (dem_.extent().contains(indexSampleX, indexSampleY)) {
+            return dem_.slopeSample(indexSampleX, indexSampleY);
+        }
         double z00 = elevationDiscreteDEM(indexSampleX, indexSampleY);
         double z10 = elevationDiscreteDEM(indexSampleX + 1, indexSampleY);
         double z01 = elevationDiscreteDEM(indexSampleX, indexSampleY + 1);
-        double root = sqrt(
-                sq(z01 - z00) + sq(z10 - z00) + sq(DISTANCE_PER_SAMPLES));
-        return acos(DISTANCE_PER_SAMPLES / root);
+        return DiscreteElevationModel.slope(z00, z10, z01);
     }
 }
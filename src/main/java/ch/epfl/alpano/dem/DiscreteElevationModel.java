@@ -6,7 +6,11 @@ package ch.epfl.alpano.dem;
  * @author Niels Poulsen
  */
 
+import static ch.epfl.alpano.Distance.toMeters;
+import static ch.epfl.alpano.Math2.sq;
 import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.acos;
+import static java.lang.Math.sqrt;
 import static java.lang.Math.toDegrees;
 
 import ch.epfl.alpano.Interval2D;
@@ -19,6 +23,9 @@ public interface DiscreteElevationModel extends AutoCloseable {
     /** Number of samples per radian of a discret DEM */
     static double SAMPLES_PER_RADIAN = SAMPLES_PER_DEGREE * toDegrees(1);
 
+    /** The distance between two samples, in meters (chosen arbitrarily) */
+    static double DISTANCE_PER_SAMPLE = toMeters(1 / SAMPLES_PER_RADIAN);
+
     /**
      * Converts an angle in his index form
      * 
@@ -52,6 +59,48 @@ public interface DiscreteElevationModel extends AutoCloseable {
      */
     double elevationSample(int x, int y);
 
+    /**
+     * Gives the slope of the terrain at a sample, computed from its elevation
+     * and the ones of its eastern and northern neighbours (the neighbours
+     * outside of the extent of the DEM having an elevation of 0). DEMs storing
+     * precomputed slopes can return them instead.
+     * 
+     * @param x
+     *            the index of the longitude of the given sample
+     * @param y
+     *            the index of the latitude of the given sample
+     * @return the slope of the sample, in radians
+     * @throws IllegalArgumentException
+     *             if the index does not belong to the extent DEM
+     */
+    default double slopeSample(int x, int y) {
+        checkArgument(extent().contains(x, y),
+                "The index is not in the extent of the DEM");
+        Interval2D extent = extent();
+        double z00 = elevationSample(x, y);
+        double z10 = extent.contains(x + 1, y) ? elevationSample(x + 1, y) : 0;
+        double z01 = extent.contains(x, y + 1) ? elevationSample(x, y + 1) : 0;
+        return slope(z00, z10, z01);
+    }
+
+    /**
+     * Computes the slope of the terrain at a sample from its elevation and the
+     * ones of its eastern and northern neighbours
+     * 
+     * @param z00
+     *            the elevation of the sample
+     * @param z10
+     *            the elevation of its eastern neighbour
+     * @param z01
+     *            the elevation of its northern neighbour
+     * @return the slope, in radians
+     */
+    static double slope(double z00, double z10, double z01) {
+        double root = sqrt(
+                sq(z01 - z00) + sq(z10 - z00) + sq(DISTANCE_PER_SAMPLE));
+        return acos(DISTANCE_PER_SAMPLE / root);
+    }
+
     /**
      * Gives a discret DEM that represents the union of 2 DEM
      * 
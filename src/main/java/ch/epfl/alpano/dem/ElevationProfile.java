@@ -7,10 +7,13 @@ import static ch.epfl.alpano.Math2.PI2;
 import static ch.epfl.alpano.Math2.floorMod;
 import static ch.epfl.alpano.Math2.lerp;
 import static ch.epfl.alpano.Preconditions.checkArgument;
+import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
 import static java.lang.Math.PI;
 import static java.lang.Math.asin;
 import static java.lang.Math.cos;
 import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.lang.Math.scalb;
 import static java.lang.Math.sin;
 import static java.util.Objects.requireNonNull;
@@ -46,15 +49,21 @@ public final class ElevationProfile {
     private final double azimuth_;
 
     /**
-     * An array containing GeoPoints seperated by a great-circle distance of
+     * The longitudes of the points seperated by a great-circle distance of
      * 4096 meters along the elevation profile
      */
-    private GeoPoint[] positions_;
+    private double[] longitudes_;
+
+    /**
+     * The latitudes of the points seperated by a great-circle distance of
+     * 4096 meters along the elevation profile
+     */
+    private double[] latitudes_;
 
     /**
      * Creates an elevation profile from an origin in a certain direction and of
-     * a certain length. Calculates GeoPoints separated by 4096 meters along the
-     * great-circle and stores them in the positions_ array.
+     * a certain length. Calculates the points separated by 4096 meters along
+     * the great-circle and stores their coordinates.
      * 
      * @param elevationModel
      *            the Continuous elevation model containing the elevation of
@@ -87,37 +96,28 @@ public final class ElevationProfile {
     }
 
     /**
-     * Calculates the GeoPoints separated by 4096 meters along the great-circle
-     * and stores them in the positions_ array. Called by the constructor during
-     * the initialization of the Elevation profile
+     * Calculates the points separated by 4096 meters along the great-circle
+     * and stores their longitudes and latitudes. Called by the constructor
+     * during the initialization of the Elevation profile
      */
     private void positions() {
         int points = (int) floor((length_ - 1) / SPACE_BETWEEN_POINTS) + 2;
-        positions_ = new GeoPoint[points];
-        for (int i = 0; i < points; ++i) {
-            positions_[i] = calculateExactPosition(i * SPACE_BETWEEN_POINTS);
-        }
-    }
+        longitudes_ = new double[points];
+        latitudes_ = new double[points];
 
-    /**
-     * Calculates the GeoPoint separated by a certain distance from the origin
-     * along the great-circle
-     * 
-     * @param distance
-     *            the distance in meters between the origin and the GeoPoint
-     * @return the GeoPoint situated "distance" away from the origin
-     */
-    private GeoPoint calculateExactPosition(double distance) {
         double latitudeFrom = origin_.latitude(); // phi
         double longitudeFrom = origin_.longitude(); // lambda
-        double radiansDistance = toRadians(distance);
-        double latitudeAt = asin(
-                (sin(latitudeFrom) * cos(radiansDistance)) + (cos(latitudeFrom)
-                        * sin(radiansDistance) * cos(toMath(azimuth_))));
-        double arcSin = asin((sin(toMath(azimuth_)) * sin(radiansDistance))
-                / cos(latitudeAt));
-        double longitudeAt = floorMod((longitudeFrom - arcSin + PI), PI2) - PI;
-        return new GeoPoint(longitudeAt, latitudeAt);
+        double sinAzimuth = sin(toMath(azimuth_));
+        double cosAzimuth = cos(toMath(azimuth_));
+        for (int i = 0; i < points; ++i) {
+            double radiansDistance = toRadians(i * SPACE_BETWEEN_POINTS);
+            double latitudeAt = asin((sin(latitudeFrom) * cos(radiansDistance))
+                    + (cos(latitudeFrom) * sin(radiansDistance) * cosAzimuth));
+            double arcSin = asin((sinAzimuth * sin(radiansDistance))
+                    / cos(latitudeAt));
+            longitudes_[i] = floorMod((longitudeFrom - arcSin + PI), PI2) - PI;
+            latitudes_[i] = latitudeAt;
+        }
     }
 
     /**
@@ -133,7 +133,60 @@ public final class ElevationProfile {
     public double elevationAt(double x) {
         checkArgument(x <= length_ && x >= 0,
                 "The point is not in the elevation profile");
-        return elevationModel_.elevationAt(positionAt(x));
+        double pos = scalb(x, -12);
+        int flooredPos = segmentIndex(pos);
+        return elevationModel_.elevationAt(
+                lerp(longitudes_[flooredPos], longitudes_[flooredPos + 1],
+                        pos - flooredPos),
+                lerp(latitudes_[flooredPos], latitudes_[flooredPos + 1],
+                        pos - flooredPos));
+    }
+
+    /**
+     * Gives the number of points stored to interpolate this
+     * 
+     * @return the number of points
+     */
+    int points() {
+        return longitudes_.length;
+    }
+
+    /**
+     * Gives the longitude of a point in the elevation profile situated a
+     * certain distance from the origin
+     * 
+     * @param x
+     *            the great-circle distance between the origin and the point
+     * @return the longitude of the point (in radians)
+     * @throws IllegalArgumentException
+     *             if the point is not in the elevation profile
+     */
+    public double longitudeAt(double x) {
+        checkArgument(x <= length_ && x >= 0,
+                "The point is not in the elevation profile");
+        double pos = scalb(x, -12);
+        int flooredPos = segmentIndex(pos);
+        return lerp(longitudes_[flooredPos], longitudes_[flooredPos + 1],
+                pos - flooredPos);
+    }
+
+    /**
+     * Gives the latitude of a point in the elevation profile situated a
+     * certain distance from the origin
+     * 
+     * @param x
+     *            the great-circle distance between the origin and the point
+     * @return the latitude of the point (in radians)
+     * @throws IllegalArgumentException
+     *             if the point is not in the elevation profile
+     */
+    public double latitudeAt(double x) {
+        checkArgument(x <= length_ && x >= 0,
+                "The point is not in the elevation profile");
+        double pos = scalb(x, -12);
+        int flooredPos = segmentIndex(pos);
+        return lerp(latitudes_[flooredPos], latitudes_[flooredPos + 1],
+                pos - flooredPos);
     }
 
     /**
@@ -147,18 +200,68 @@ public final class ElevationProfile {
      *             if the point is not in the elevation profile
      */
     public GeoPoint positionAt(double x) {
-        checkArgument(x <= length_ && x >= 0,
-                "The point is not in the elevation profile");
-        double pos = scalb(x, -12);
+        return new GeoPoint(longitudeAt(x), latitudeAt(x));
+    }
+
+    /**
+     * Gives an upper bound of the elevation of the ground in between two
+     * points of the elevation profile, read in a pyramid of the maximum
+     * elevations of the DEM from which this profile is made
+     * 
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the DEM
+     * @param from
+     *            the distance between the origin and the first point
+     * @param to
+     *            the distance between the origin and the second point
+     * @return an upper bound of the elevation of the profile in between the
+     *         two points (in meters)
+     * @throws IllegalArgumentException
+     *             if one of the points is not in the elevation profile, or if
+     *             the first one is further than the second one
+     */
+    public double maxElevationBetween(MaxElevationPyramid pyramid, double from,
+            double to) {
+        checkArgument(from >= 0 && from <= to && to <= length_,
+                "The points are not in the elevation profile");
+        double minLongitude = min(longitudeAt(from), longitudeAt(to));
+        double maxLongitude = max(longitudeAt(from), longitudeAt(to));
+        double minLatitude = min(latitudeAt(from), latitudeAt(to));
+        double maxLatitude = max(latitudeAt(from), latitudeAt(to));
+
+        // The points of the profile in between are interpolated from the
+        // stored points, which must thus be in the bounds too
+        for (int i = segmentIndex(scalb(from, -12)) + 1; i <= segmentIndex(
+                scalb(to, -12)); ++i) {
+            minLongitude = min(minLongitude, longitudes_[i]);
+            maxLongitude = max(maxLongitude, longitudes_[i]);
+            minLatitude = min(minLatitude, latitudes_[i]);
+            maxLatitude = max(maxLatitude, latitudes_[i]);
+        }
+
+        // The continuous DEM interpolates each point from the samples
+        // surrounding it
+        return pyramid.maxElevation((int) floor(sampleIndex(minLongitude)),
+                (int) floor(sampleIndex(minLatitude)),
+                (int) floor(sampleIndex(maxLongitude)) + 1,
+                (int) floor(sampleIndex(maxLatitude)) + 1);
+    }
+
+    /**
+     * Gives the index of the first of the two stored points in between
+     * which a point of the elevation profile is interpolated
+     * 
+     * @param pos
+     *            the distance between the origin and the point, in units of
+     *            4096 meters
+     * @return the index of the stored point preceding the point
+     */
+    private int segmentIndex(double pos) {
         int flooredPos = (int) floor(pos);
-        if (flooredPos == positions_.length-1){
+        if (flooredPos == longitudes_.length - 1) {
             flooredPos -= 1;
         }
-        double longitude = lerp(positions_[flooredPos].longitude(),
-                positions_[flooredPos + 1].longitude(), pos - flooredPos);
-        double latitude = lerp(positions_[flooredPos].latitude(),
-                positions_[flooredPos + 1].latitude(), pos - flooredPos);
-        return new GeoPoint(longitude, latitude);
+        return flooredPos;
     }
 
     /**
@@ -172,9 +275,7 @@ public final class ElevationProfile {
      *             if the point is not in the elevation profile
      */
     public double slopeAt(double x) {
-        checkArgument(x <= length_ && x >= 0,
-                "The point is not in the elevation profile");
-        return elevationModel_.slopeAt(positionAt(x));
+        return elevationModel_.slopeAt(longitudeAt(x), latitudeAt(x));
     }
 
 }
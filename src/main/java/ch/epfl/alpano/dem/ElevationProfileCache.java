@@ -0,0 +1,197 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Represents a cache of the elevation profiles of a continuous DEM, so that
+ * the panoramas seen from the same observer share the great-circle geometry
+ * of their columns. The profiles are identified by their origin, their length
+ * and their azimuth rounded to a multiple of a quantum: a profile is always
+ * built with the rounded azimuth, so that it does not depend on which request
+ * first built it. The quantum is derived from the angle between two columns
+ * of the panorama, as the largest power of two not greater than a fraction of
+ * it, so that the panoramas of a slightly different width or field of view
+ * share profiles (the grids of two such quanta are nested). The least
+ * recently used profiles are evicted when the cache is full.
+ * <p>
+ * A cache can be used by several threads at the same time.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Math2.PI2;
+import static ch.epfl.alpano.Math2.floorMod;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.LruCache;
+
+public final class ElevationProfileCache {
+
+    /** The number of bytes taken by each point of a profile */
+    private final static int BYTES_PER_POINT = 2 * Double.BYTES;
+
+    /** The DEM of the profiles */
+    private final ContinuousElevationModel elevationModel_;
+
+    /** The profiles, by their origin, azimuth and length */
+    private final LruCache<Key, ElevationProfile> profiles_;
+
+    /**
+     * The largest fraction of the angle between two columns by which the
+     * quantum of the azimuths may be
+     */
+    private final double columnFraction_;
+
+    /**
+     * Creates an empty cache of the profiles of a DEM
+     *
+     * @param elevationModel
+     *            the DEM of the profiles
+     * @param maxBytes
+     *            the maximum number of bytes taken by the points of the
+     *            profiles of the cache
+     * @param columnFraction
+     *            the largest fraction of the angle between two columns which
+     *            the quantum of the azimuths may be (the azimuths thus being
+     *            moved by at most half of it)
+     * @throws NullPointerException
+     *             if the DEM is null
+     * @throws IllegalArgumentException
+     *             if the maximum number of bytes is negative, or if the
+     *             fraction is not in ]0, 1]
+     */
+    public ElevationProfileCache(ContinuousElevationModel elevationModel,
+            long maxBytes, double columnFraction) {
+        elevationModel_ = requireNonNull(elevationModel,
+                "The elevation model is null");
+        checkArgument(0 < columnFraction && columnFraction <= 1,
+                "The fraction of a column is not in ]0, 1]");
+        columnFraction_ = columnFraction;
+        profiles_ = new LruCache<>(maxBytes,
+                p -> (long) BYTES_PER_POINT * p.points());
+    }
+
+    /**
+     * Gives the DEM of the profiles of this
+     *
+     * @return the continuous DEM
+     */
+    public ContinuousElevationModel elevationModel() {
+        return elevationModel_;
+    }
+
+    /**
+     * Gives the profile starting at an origin in a direction, building it only
+     * if it is not in the cache
+     *
+     * @param origin
+     *            the origin of the profile
+     * @param azimuth
+     *            the azimuth of the profile, which is rounded to a multiple of
+     *            the quantum of the columns
+     * @param length
+     *            the length of the profile (in meters)
+     * @param columnAngle
+     *            the angle (in radians) between two columns of the panorama
+     *            of the profile
+     * @return the profile
+     * @throws IllegalArgumentException
+     *             if the azimuth is not canonical, or if the length or the
+     *             angle is not strictly positive
+     * @throws NullPointerException
+     *             if the origin is null
+     */
+    public ElevationProfile profile(GeoPoint origin, double azimuth,
+            double length, double columnAngle) {
+        checkArgument(0 <= azimuth && azimuth < PI2,
+                "The azimuth is not canonical");
+        double quantum = quantum(columnAngle);
+        double rounded = floorMod(Math.round(azimuth / quantum) * quantum,
+                PI2);
+        Key key = new Key(requireNonNull(origin, "The origin is null"),
+                rounded, length);
+        ElevationProfile profile = profiles_.get(key);
+        if (profile == null) {
+            // Two threads may build the same profile, which is then only
+            // stored once
+            profile = new ElevationProfile(elevationModel_, origin, rounded,
+                    length);
+            profiles_.put(key, profile);
+        }
+        return profile;
+    }
+
+    /**
+     * Gives the angle to a multiple of which the azimuths of the columns of a
+     * panorama are rounded: the largest power of two not greater than the
+     * fraction of the angle between two columns
+     *
+     * @param columnAngle
+     *            the angle (in radians) between two columns
+     * @return the quantum, in radians
+     * @throws IllegalArgumentException
+     *             if the angle is not strictly positive
+     */
+    public double quantum(double columnAngle) {
+        checkArgument(columnAngle > 0,
+                "The angle between two columns is not strictly positive");
+        return Math.scalb(1.0, Math.getExponent(columnFraction_ * columnAngle));
+    }
+
+    /**
+     * Gives the number of profiles in the cache
+     *
+     * @return the number of profiles
+     */
+    public int size() {
+        return profiles_.size();
+    }
+
+    /**
+     * Gives the number of profiles which were found in the cache
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return profiles_.hits();
+    }
+
+    /**
+     * Gives the number of profiles which had to be built
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return profiles_.misses();
+    }
+
+    /** Identifies a profile by its origin, rounded azimuth and length */
+    private final static class Key {
+        private final double longitude_, latitude_, azimuth_, length_;
+
+        private Key(GeoPoint origin, double azimuth, double length) {
+            longitude_ = origin.longitude();
+            latitude_ = origin.latitude();
+            azimuth_ = azimuth;
+            length_ = length;
+        }
+
+        @Override
+        public boolean equals(Object thatO) {
+            if (!(thatO instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) thatO;
+            return longitude_ == k.longitude_ && latitude_ == k.latitude_
+                    && azimuth_ == k.azimuth_ && length_ == k.length_;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(longitude_, latitude_, azimuth_, length_);
+        }
+    }
+
+}
@@ -29,7 +29,7 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
      * The size of a hgt file (the number of sample it stocks * 2, because
      * each sample is stocked in two bytes)
      */
-    private final static long HGT_SIZE = 2 * (HGT_LENGTH)*(HGT_LENGTH);
+    final static long HGT_SIZE = 2 * (HGT_LENGTH)*(HGT_LENGTH);
     /**
      * A shortbuffer where all the (elevation) samples of the hgt are stocked
      */
@@ -0,0 +1,398 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Represents a DEM made of all of the hgt files of a directory, indexed by
+ * their name (e.g. N45E007.hgt). The tiles converted by
+ * PrecomputedTileConverter (e.g. N45E007.dem) are read instead of the hgt
+ * files of the same name, which are then not needed. A file is only mapped in
+ * memory when one of its samples is first read, and at most a certain number
+ * of files are held at the same time: when a new one has to be mapped, the
+ * least recently used one is dropped. This budget is a number of tiles, not
+ * of bytes: a hgt file maps about 26 MB, and a precomputed tile about 52 MB.
+ * The samples of the 1°x1° areas without any file have an elevation of 0,
+ * except the ones of the edges they share with tiles having a file, which are
+ * read in those. The tiles are arranged in a TileGridDiscreteElevationModel,
+ * which finds the tile of a sample.
+ * <p>
+ * Java cannot unmap a file explicitly while other threads may still read it,
+ * so a dropped tile is only unmapped once the garbage collector finds that no
+ * thread reads it any more. The catalog never references more than the
+ * maximum number of mapped tiles, which thus bounds the address space used
+ * once the dropped tiles are collected, but not in between.
+ * <p>
+ * A catalog can be read by several threads at the same time.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Integer.parseInt;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public final class HgtTileCatalog implements DiscreteElevationModel {
+
+    /**
+     * The names of the hgt files, giving the latitude and longitude of their
+     * south-west corner
+     */
+    private final static Pattern HGT_NAME = Pattern
+            .compile("([NS])(\\d{2})([EW])(\\d{3})\\.(hgt|dem)");
+
+    /** The tiles which have a file, mapped or not */
+    private final List<MappedTile> tiles_;
+
+    /** The grid of all of the tiles of the catalog, with or without a file */
+    private final TileGridDiscreteElevationModel grid_;
+
+    /** The maximum number of tiles mapped at the same time */
+    private final int maxMappedTiles_;
+
+    /**
+     * The clock giving the order of the uses of the tiles, advanced each time
+     * a tile is mapped
+     */
+    private volatile long clock_;
+
+    /** The number of tiles currently mapped */
+    private int mappedTiles_;
+
+    /** The number of tiles mapped since the creation of the catalog */
+    private long loads_;
+
+    /**
+     * Creates the catalog of the hgt files of a directory, without mapping any
+     * of them. The other files of the directory are ignored.
+     *
+     * @param directory
+     *            the directory containing the hgt files
+     * @param maxMappedTiles
+     *            the maximum number of tiles mapped at the same time, whatever
+     *            their size (each of them taking about 26 MB, or 52 MB if it
+     *            is precomputed)
+     * @throws NullPointerException
+     *             if the directory is null
+     * @throws IllegalArgumentException
+     *             if the directory cannot be read or does not contain any hgt
+     *             file, or if the maximum number of mapped tiles is not
+     *             strictly positive
+     */
+    public HgtTileCatalog(File directory, int maxMappedTiles) {
+        requireNonNull(directory, "The directory given is null");
+        checkArgument(maxMappedTiles > 0,
+                "The maximum number of mapped tiles is not strictly positive");
+        File[] files = directory.listFiles();
+        checkArgument(files != null, "The directory cannot be read");
+
+        Map<List<Integer>, File> byCorner = new HashMap<>();
+        int longitudeMin = Integer.MAX_VALUE, latitudeMin = Integer.MAX_VALUE;
+        int longitudeMax = Integer.MIN_VALUE, latitudeMax = Integer.MIN_VALUE;
+        for (File file : files) {
+            int[] corner = corner(file);
+            if (corner == null) {
+                continue;
+            }
+            List<Integer> key = Arrays.asList(corner[0], corner[1]);
+            if (!byCorner.containsKey(key) || isPrecomputed(file)) {
+                byCorner.put(key, file);
+            }
+            longitudeMin = min(longitudeMin, corner[0]);
+            latitudeMin = min(latitudeMin, corner[1]);
+            longitudeMax = max(longitudeMax, corner[0]);
+            latitudeMax = max(latitudeMax, corner[1]);
+        }
+        checkArgument(!byCorner.isEmpty(),
+                "The directory does not contain any hgt file");
+
+        tiles_ = new ArrayList<>();
+        Map<List<Integer>, MappedTile> mappedByCorner = new HashMap<>();
+        for (Map.Entry<List<Integer>, File> e : byCorner.entrySet()) {
+            MappedTile tile = new MappedTile(e.getValue(),
+                    extent(e.getKey().get(0), e.getKey().get(1)));
+            tiles_.add(tile);
+            mappedByCorner.put(e.getKey(), tile);
+        }
+        List<DiscreteElevationModel> grid = new ArrayList<>();
+        for (int latitude = latitudeMin; latitude <= latitudeMax; ++latitude) {
+            for (int longitude = longitudeMin; longitude <= longitudeMax;
+                    ++longitude) {
+                MappedTile tile = mappedByCorner
+                        .get(Arrays.asList(longitude, latitude));
+                if (tile != null) {
+                    grid.add(tile);
+                    continue;
+                }
+                // The tiles with a file around the area, whose edges and
+                // corners it shares
+                List<MappedTile> neighbours = new ArrayList<>();
+                for (int dLat = -1; dLat <= 1; ++dLat) {
+                    for (int dLon = -1; dLon <= 1; ++dLon) {
+                        MappedTile neighbour = mappedByCorner.get(Arrays
+                                .asList(longitude + dLon, latitude + dLat));
+                        if (neighbour != null) {
+                            neighbours.add(neighbour);
+                        }
+                    }
+                }
+                grid.add(new FlatTile(extent(longitude, latitude),
+                        neighbours));
+            }
+        }
+        grid_ = new TileGridDiscreteElevationModel(grid);
+        maxMappedTiles_ = maxMappedTiles;
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        for (MappedTile tile : tiles_) {
+            tile.mapped_ = null;
+        }
+        mappedTiles_ = 0;
+    }
+
+    @Override
+    public Interval2D extent() {
+        return grid_.extent();
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        return grid_.elevationSample(x, y);
+    }
+
+    @Override
+    public double slopeSample(int x, int y) {
+        return grid_.slopeSample(x, y);
+    }
+
+    /**
+     * Gives the number of tiles currently mapped
+     *
+     * @return the number of mapped tiles
+     */
+    public synchronized int mappedTiles() {
+        return mappedTiles_;
+    }
+
+    /**
+     * Gives the number of tiles mapped since the creation of the catalog,
+     * including the ones mapped again after having been dropped
+     *
+     * @return the number of times a tile was mapped
+     */
+    public synchronized long loads() {
+        return loads_;
+    }
+
+    /**
+     * Maps the file of a tile, dropping the least recently used tile if too
+     * many of them are already mapped
+     *
+     * @param tile
+     *            the tile
+     * @return the DEM of the mapped file
+     */
+    private synchronized DiscreteElevationModel map(MappedTile tile) {
+        DiscreteElevationModel mapped = tile.mapped_;
+        if (mapped != null) {
+            return mapped;
+        }
+
+        if (mappedTiles_ == maxMappedTiles_) {
+            MappedTile eldest = null;
+            for (MappedTile t : tiles_) {
+                if (t.mapped_ != null
+                        && (eldest == null || t.lastUse_ < eldest.lastUse_)) {
+                    eldest = t;
+                }
+            }
+            // The threads still reading the tile keep it mapped until they
+            // are done, so it is dropped rather than closed
+            eldest.mapped_ = null;
+            --mappedTiles_;
+        }
+
+        mapped = isPrecomputed(tile.file_)
+                ? new PrecomputedDiscreteElevationModel(tile.file_)
+                : new HgtDiscreteElevationModel(tile.file_);
+        ++loads_;
+        ++mappedTiles_;
+        // The tiles read from now on are more recently used than this one
+        tile.lastUse_ = clock_;
+        clock_ = clock_ + 1;
+        tile.mapped_ = mapped;
+        return mapped;
+    }
+
+    /**
+     * Gives the extent of the tile of a 1°x1° area
+     *
+     * @param longitude
+     *            the longitude of the south-west corner, in degrees
+     * @param latitude
+     *            the latitude of the south-west corner, in degrees
+     * @return the extent of the tile
+     */
+    private static Interval2D extent(int longitude, int latitude) {
+        return new Interval2D(
+                new Interval1D(SAMPLES_PER_DEGREE * longitude,
+                        SAMPLES_PER_DEGREE * (longitude + 1)),
+                new Interval1D(SAMPLES_PER_DEGREE * latitude,
+                        SAMPLES_PER_DEGREE * (latitude + 1)));
+    }
+
+    /**
+     * Gives the longitude and the latitude of the south-west corner of a tile
+     * from the name of its file
+     *
+     * @param file
+     *            the file of the tile
+     * @return the longitude and the latitude of the corner, in degrees, or
+     *         null if the file is not the one of a tile
+     */
+    static int[] corner(File file) {
+        Matcher m = HGT_NAME.matcher(file.getName());
+        if (!m.matches() || (!isPrecomputed(file)
+                && file.length() != HgtDiscreteElevationModel.HGT_SIZE)) {
+            return null;
+        }
+        int latitude = m.group(1).equals("N") ? parseInt(m.group(2))
+                : -parseInt(m.group(2));
+        int longitude = m.group(3).equals("E") ? parseInt(m.group(4))
+                : -parseInt(m.group(4));
+        if (latitude >= 90 || longitude >= 180) {
+            return null;
+        }
+        return new int[] { longitude, latitude };
+    }
+
+    /**
+     * Checks whether the file of a tile was written by
+     * PrecomputedTileConverter
+     *
+     * @param file
+     *            the file of the tile
+     * @return true if the file is a precomputed tile, false if it is a hgt
+     *         file
+     */
+    private static boolean isPrecomputed(File file) {
+        return file.getName().endsWith(".dem");
+    }
+
+    /**
+     * Represents a tile with a file, which is mapped when one of its samples
+     * is first read, and mapped again if it was dropped in between
+     */
+    private final class MappedTile implements DiscreteElevationModel {
+
+        /** The file of the tile */
+        private final File file_;
+
+        /** The extent of the tile */
+        private final Interval2D extent_;
+
+        /** The DEM of the mapped file, null if it is not mapped */
+        private volatile DiscreteElevationModel mapped_;
+
+        /** The value of the clock when the tile was last read */
+        private long lastUse_;
+
+        private MappedTile(File file, Interval2D extent) {
+            file_ = file;
+            extent_ = extent;
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent_;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            return mapped().elevationSample(x, y);
+        }
+
+        @Override
+        public double slopeSample(int x, int y) {
+            return mapped().slopeSample(x, y);
+        }
+
+        @Override
+        public void close() {
+            // The mapped files are dropped by the catalog
+        }
+
+        /**
+         * Gives the DEM of the file, mapping it if needed, and marks the tile
+         * as the most recently used one
+         *
+         * @return the DEM of the file
+         */
+        private DiscreteElevationModel mapped() {
+            DiscreteElevationModel mapped = mapped_;
+            if (mapped == null) {
+                return map(this);
+            }
+            long now = clock_;
+            // A lost update only makes the choice of the tile to drop less
+            // exact
+            if (lastUse_ != now) {
+                lastUse_ = now;
+            }
+            return mapped;
+        }
+    }
+
+    /**
+     * Represents a 1°x1° area without any file, whose elevation is 0 but on
+     * the edges it shares with tiles having a file
+     */
+    private final static class FlatTile implements DiscreteElevationModel {
+
+        /** The extent of the tile */
+        private final Interval2D extent_;
+
+        /** The tiles with a file sharing an edge or a corner with this one */
+        private final List<MappedTile> neighbours_;
+
+        private FlatTile(Interval2D extent, List<MappedTile> neighbours) {
+            extent_ = extent;
+            neighbours_ = neighbours;
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent_;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            checkArgument(extent_.contains(x, y),
+                    "The index is not in this tile");
+            for (MappedTile neighbour : neighbours_) {
+                if (neighbour.extent_.contains(x, y)) {
+                    return neighbour.elevationSample(x, y);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
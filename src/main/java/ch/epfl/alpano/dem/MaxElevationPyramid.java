@@ -0,0 +1,213 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Represents a pyramid of the maximum elevations of a discrete DEM. The lowest
+ * level divides the extent of the DEM in square blocks of BASE_BLOCK_SIZE
+ * samples, and each level above merges the blocks of the previous one four by
+ * four, like a quadtree. The maximum elevation of any rectangle of samples can
+ * then be bounded by reading at most four blocks of a single level.
+ * <p>
+ * The maxima are computed lazily, the first time a block is read, so building
+ * a pyramid over a large DEM costs nothing until it is used. A pyramid can be
+ * read by several threads at the same time.
+ *
+ * @author Niels Poulsen
+ */
+
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Arrays.fill;
+import static java.util.Objects.requireNonNull;
+
+import ch.epfl.alpano.Interval2D;
+
+public final class MaxElevationPyramid {
+
+    /** The log2 of the number of samples on the side of a block of level 0 */
+    private final static int BASE_LEVEL_SHIFT = 6;
+
+    /** The number of samples on the side of a block of level 0 */
+    public final static int BASE_BLOCK_SIZE = 1 << BASE_LEVEL_SHIFT;
+
+    /** The DEM whose maximum elevations are stored in this */
+    private final DiscreteElevationModel dem_;
+
+    /** The smallest longitude index of the DEM */
+    private final int xMin_;
+
+    /** The smallest latitude index of the DEM */
+    private final int yMin_;
+
+    /** The number of blocks on a row of each level */
+    private final int[] widths_;
+
+    /**
+     * The maximum elevations of the blocks of each level, row by row, NaN for
+     * the blocks which have not been computed yet
+     */
+    private final float[][] maxima_;
+
+    /**
+     * Creates the (empty) pyramid of the maximum elevations of a DEM
+     *
+     * @param dem
+     *            the discrete DEM
+     * @throws NullPointerException
+     *             if the DEM is null
+     */
+    public MaxElevationPyramid(DiscreteElevationModel dem) {
+        dem_ = requireNonNull(dem, "The DEM given is null");
+        Interval2D extent = dem.extent();
+        xMin_ = extent.iX().includedFrom();
+        yMin_ = extent.iY().includedFrom();
+
+        // The top level is made of a single block covering the whole extent
+        int levels = 1;
+        while (blocksCovering(extent.iX().size(), BASE_LEVEL_SHIFT + levels - 1) > 1
+                || blocksCovering(extent.iY().size(), BASE_LEVEL_SHIFT + levels - 1) > 1) {
+            ++levels;
+        }
+
+        widths_ = new int[levels];
+        maxima_ = new float[levels][];
+        for (int level = 0; level < levels; ++level) {
+            int shift = BASE_LEVEL_SHIFT + level;
+            widths_[level] = blocksCovering(extent.iX().size(), shift);
+            maxima_[level] = new float[widths_[level]
+                    * blocksCovering(extent.iY().size(), shift)];
+            fill(maxima_[level], Float.NaN);
+        }
+    }
+
+    /**
+     * Gives the maximum elevation of the samples of a rectangle, the samples
+     * outside of the extent of the DEM having an elevation of 0 (as in the
+     * continuous DEM)
+     *
+     * @param xFrom
+     *            the smallest longitude index of the rectangle (included)
+     * @param yFrom
+     *            the smallest latitude index of the rectangle (included)
+     * @param xTo
+     *            the biggest longitude index of the rectangle (included)
+     * @param yTo
+     *            the biggest latitude index of the rectangle (included)
+     * @return an upper bound of the elevation of the samples of the rectangle,
+     *         in meters, which is never smaller than their actual maximum
+     */
+    public double maxElevation(int xFrom, int yFrom, int xTo, int yTo) {
+        Interval2D extent = dem_.extent();
+        int x0 = max(xFrom, xMin_), x1 = min(xTo, extent.iX().includedTo());
+        int y0 = max(yFrom, yMin_), y1 = min(yTo, extent.iY().includedTo());
+        boolean outside = x0 != xFrom || x1 != xTo || y0 != yFrom || y1 != yTo;
+        if (x0 > x1 || y0 > y1) {
+            return 0;
+        }
+
+        // The lowest level on which the rectangle spans at most 2x2 blocks
+        int size = max(x1 - x0, y1 - y0) + 1;
+        int level = 0;
+        while (level < maxima_.length - 1
+                && (BASE_BLOCK_SIZE << level) < size) {
+            ++level;
+        }
+
+        int shift = BASE_LEVEL_SHIFT + level;
+        double maximum = outside ? 0 : Double.NEGATIVE_INFINITY;
+        for (int by = (y0 - yMin_) >> shift; by <= (y1 - yMin_) >> shift; ++by) {
+            for (int bx = (x0 - xMin_) >> shift; bx <= (x1 - xMin_) >> shift; ++bx) {
+                maximum = max(maximum, block(level, bx, by));
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * Gives the maximum elevation of a block, computing it if needed
+     *
+     * @param level
+     *            the level of the block
+     * @param bx
+     *            the horizontal index of the block in its level
+     * @param by
+     *            the vertical index of the block in its level
+     * @return the maximum elevation of the samples of the block
+     */
+    private float block(int level, int bx, int by) {
+        int index = by * widths_[level] + bx;
+        float maximum = maxima_[level][index];
+        if (Float.isNaN(maximum)) {
+            maximum = level == 0 ? scanBlock(bx, by) : mergeBlocks(level, bx, by);
+            // Concurrent computations of a block all store the same value
+            maxima_[level][index] = maximum;
+        }
+        return maximum;
+    }
+
+    /**
+     * Computes the maximum elevation of a block of level 0 from the samples of
+     * the DEM
+     *
+     * @param bx
+     *            the horizontal index of the block
+     * @param by
+     *            the vertical index of the block
+     * @return the maximum elevation of the samples of the block
+     */
+    private float scanBlock(int bx, int by) {
+        Interval2D extent = dem_.extent();
+        int x0 = xMin_ + (bx << BASE_LEVEL_SHIFT);
+        int y0 = yMin_ + (by << BASE_LEVEL_SHIFT);
+        int x1 = min(x0 + BASE_BLOCK_SIZE - 1, extent.iX().includedTo());
+        int y1 = min(y0 + BASE_BLOCK_SIZE - 1, extent.iY().includedTo());
+
+        double maximum = Double.NEGATIVE_INFINITY;
+        for (int y = y0; y <= y1; ++y) {
+            for (int x = x0; x <= x1; ++x) {
+                maximum = max(maximum, dem_.elevationSample(x, y));
+            }
+        }
+        // Rounds up so that the float never underestimates the maximum
+        return Math.nextUp((float) maximum);
+    }
+
+    /**
+     * Computes the maximum elevation of a block from the (up to) four blocks it
+     * covers on the level below
+     *
+     * @param level
+     *            the level of the block (strictly positive)
+     * @param bx
+     *            the horizontal index of the block
+     * @param by
+     *            the vertical index of the block
+     * @return the maximum elevation of the samples of the block
+     */
+    private float mergeBlocks(int level, int bx, int by) {
+        int below = level - 1;
+        int width = widths_[below];
+        int height = maxima_[below].length / width;
+        float maximum = Float.NEGATIVE_INFINITY;
+        for (int y = 2 * by; y <= min(2 * by + 1, height - 1); ++y) {
+            for (int x = 2 * bx; x <= min(2 * bx + 1, width - 1); ++x) {
+                maximum = max(maximum, block(below, x, y));
+            }
+        }
+        return maximum;
+    }
+
+    /**
+     * Gives the number of blocks needed to cover a certain number of samples
+     *
+     * @param samples
+     *            the number of samples
+     * @param shift
+     *            the log2 of the number of samples on the side of a block
+     * @return the number of blocks
+     */
+    private static int blocksCovering(int samples, int shift) {
+        return floorDiv(samples - 1, 1 << shift) + 1;
+    }
+
+}
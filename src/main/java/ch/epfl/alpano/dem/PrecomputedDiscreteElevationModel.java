@@ -0,0 +1,134 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Represents a DEM read from a file written by PrecomputedTileConverter, which
+ * stores the elevation and the slope of each sample side by side, in the
+ * native byte order of the machine. Reading a sample thus costs a single
+ * memory access, without any conversion of byte order nor computation of the
+ * slope.
+ * <p>
+ * The file starts with a header of six ints (a magic number, the version of
+ * the format, the smallest longitude and latitude indices and the width and
+ * height of the extent), followed by one int per sample, row by row from the
+ * south-west. The 16 most significant bits of a sample hold its elevation in
+ * meters (signed), the 16 least significant ones its slope, quantized over
+ * [0, π/2].
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.PI;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public final class PrecomputedDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    /** The magic number at the start of the files ("ALPT") */
+    final static int MAGIC = 0x414C5054;
+
+    /** The version of the format of the files */
+    final static int VERSION = 1;
+
+    /** The number of ints of the header of the files */
+    final static int HEADER_INTS = 6;
+
+    /** The largest quantized slope, corresponding to π/2 */
+    final static int MAX_QUANTIZED_SLOPE = 0xFFFF;
+
+    /** The slope corresponding to one step of the quantization */
+    final static double SLOPE_STEP = (PI / 2) / MAX_QUANTIZED_SLOPE;
+
+    /** The samples of the file, row by row from the south-west */
+    private IntBuffer samples_;
+
+    /** The extent of the DEM */
+    private final Interval2D extent_;
+
+    /** The smallest longitude index of the DEM */
+    private final int xMin_;
+
+    /** The smallest latitude index of the DEM */
+    private final int yMin_;
+
+    /** The number of samples on a row of the DEM */
+    private final int width_;
+
+    /**
+     * Maps a file written by PrecomputedTileConverter
+     *
+     * @param file
+     *            the file
+     * @throws IllegalArgumentException
+     *             if the file cannot be read, is not in the expected format,
+     *             or was written on a machine with another byte order
+     */
+    public PrecomputedDiscreteElevationModel(File file) {
+        ByteBuffer buffer;
+        try (FileInputStream stream = new FileInputStream(file)) {
+            buffer = stream.getChannel()
+                    .map(MapMode.READ_ONLY, 0, stream.getChannel().size())
+                    .order(ByteOrder.nativeOrder());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The file cannot be read", e);
+        }
+        checkArgument(buffer.capacity() >= HEADER_INTS * Integer.BYTES,
+                "The file is too short");
+        IntBuffer header = buffer.asIntBuffer();
+        checkArgument(header.get(0) != Integer.reverseBytes(MAGIC),
+                "The file was written with another byte order");
+        checkArgument(header.get(0) == MAGIC && header.get(1) == VERSION,
+                "The file is not a precomputed DEM");
+
+        xMin_ = header.get(2);
+        yMin_ = header.get(3);
+        width_ = header.get(4);
+        int height = header.get(5);
+        checkArgument(width_ > 0 && height > 0,
+                "The extent of the file is empty");
+        checkArgument(buffer.capacity() == Integer.BYTES
+                * (HEADER_INTS + (long) width_ * height),
+                "The size of the file does not match its extent");
+        extent_ = new Interval2D(new Interval1D(xMin_, xMin_ + width_ - 1),
+                new Interval1D(yMin_, yMin_ + height - 1));
+
+        buffer.position(HEADER_INTS * Integer.BYTES);
+        samples_ = buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    @Override
+    public void close() throws Exception {
+        samples_ = null;
+    }
+
+    @Override
+    public Interval2D extent() {
+        return extent_;
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        checkArgument(extent_.contains(x, y),
+                "The index is not in this precomputed DEM");
+        return samples_.get((y - yMin_) * width_ + x - xMin_) >> 16;
+    }
+
+    @Override
+    public double slopeSample(int x, int y) {
+        checkArgument(extent_.contains(x, y),
+                "The index is not in this precomputed DEM");
+        return (samples_.get((y - yMin_) * width_ + x - xMin_) & 0xFFFF)
+                * SLOPE_STEP;
+    }
+
+}
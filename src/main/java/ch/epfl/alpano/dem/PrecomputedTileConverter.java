@@ -0,0 +1,158 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Converts the tiles of a DEM to files which can be read by
+ * PrecomputedDiscreteElevationModel, storing the elevation and the slope of
+ * each sample. The slopes are computed with the neighbours of the samples in
+ * the whole DEM, so that the ones of the edges of a tile are the same as if
+ * they were computed from the DEM itself.
+ * <p>
+ * It can be run on its own to convert a directory of hgt files:
+ * {@code PrecomputedTileConverter <hgt directory> <output directory>}. The
+ * files it writes must be read on machines with the same byte order.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static ch.epfl.alpano.dem.PrecomputedDiscreteElevationModel.HEADER_INTS;
+import static ch.epfl.alpano.dem.PrecomputedDiscreteElevationModel.MAGIC;
+import static ch.epfl.alpano.dem.PrecomputedDiscreteElevationModel.MAX_QUANTIZED_SLOPE;
+import static ch.epfl.alpano.dem.PrecomputedDiscreteElevationModel.SLOPE_STEP;
+import static ch.epfl.alpano.dem.PrecomputedDiscreteElevationModel.VERSION;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public final class PrecomputedTileConverter {
+
+    /** The number of hgt files mapped at the same time during a conversion */
+    private final static int MAPPED_TILES = 9;
+
+    private PrecomputedTileConverter() {
+    }
+
+    /**
+     * Converts a directory of hgt files, writing a file named after each of
+     * them with the extension .dem
+     *
+     * @param args
+     *            the directory of the hgt files and the output directory
+     * @throws IOException
+     *             if a file could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        checkArgument(args.length == 2, "Usage: PrecomputedTileConverter "
+                + "<hgt directory> <output directory>");
+        convertDirectory(new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Converts a directory of hgt files, writing a file named after each of
+     * them with the extension .dem
+     *
+     * @param hgtDirectory
+     *            the directory of the hgt files
+     * @param outputDirectory
+     *            the directory in which the files are written
+     * @throws IOException
+     *             if a file could not be written
+     * @throws IllegalArgumentException
+     *             if the directory does not contain any hgt file
+     */
+    public static void convertDirectory(File hgtDirectory, File outputDirectory)
+            throws IOException {
+        HgtTileCatalog catalog = new HgtTileCatalog(hgtDirectory,
+                MAPPED_TILES);
+        for (File file : hgtDirectory.listFiles()) {
+            int[] corner = HgtTileCatalog.corner(file);
+            if (corner == null || !file.getName().endsWith(".hgt")) {
+                continue;
+            }
+            Interval2D extent = new Interval2D(
+                    new Interval1D(SAMPLES_PER_DEGREE * corner[0],
+                            SAMPLES_PER_DEGREE * (corner[0] + 1)),
+                    new Interval1D(SAMPLES_PER_DEGREE * corner[1],
+                            SAMPLES_PER_DEGREE * (corner[1] + 1)));
+            String name = file.getName().replace(".hgt", ".dem");
+            convert(catalog, extent, new File(outputDirectory, name));
+        }
+    }
+
+    /**
+     * Writes the elevations and the slopes of a part of a DEM to a file
+     *
+     * @param source
+     *            the DEM
+     * @param extent
+     *            the part of the DEM written, which must be in its extent
+     * @param file
+     *            the file written
+     * @throws IOException
+     *             if the file could not be written
+     * @throws IllegalArgumentException
+     *             if the part is not in the extent of the DEM, or if one of
+     *             its elevations cannot be stored in 16 bits
+     */
+    public static void convert(DiscreteElevationModel source,
+            Interval2D extent, File file) throws IOException {
+        requireNonNull(source, "The DEM given is null");
+        checkArgument(source.extent().sizeOfIntersectionWith(extent) == extent
+                .size(), "The part written is not in the extent of the DEM");
+        int xMin = extent.iX().includedFrom(), yMin = extent.iY().includedFrom();
+        int width = extent.iX().size(), height = extent.iY().size();
+
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+                FileChannel channel = output.getChannel()) {
+            long size = Integer.BYTES * (HEADER_INTS + (long) width * height);
+            output.setLength(size);
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            IntBuffer ints = buffer.order(ByteOrder.nativeOrder())
+                    .asIntBuffer();
+            ints.put(MAGIC).put(VERSION).put(xMin).put(yMin).put(width)
+                    .put(height);
+
+            for (int y = yMin; y < yMin + height; ++y) {
+                for (int x = xMin; x < xMin + width; ++x) {
+                    ints.put(sample(source.elevationSample(x, y),
+                            source.slopeSample(x, y)));
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Packs the elevation and the quantized slope of a sample in an int
+     *
+     * @param elevation
+     *            the elevation, in meters
+     * @param slope
+     *            the slope, in radians
+     * @return the packed sample
+     * @throws IllegalArgumentException
+     *             if the elevation cannot be stored in 16 bits
+     */
+    private static int sample(double elevation, double slope) {
+        long meters = Math.round(elevation);
+        checkArgument(Short.MIN_VALUE <= meters && meters <= Short.MAX_VALUE,
+                "The elevation cannot be stored in 16 bits");
+        int quantized = (int) max(0,
+                min(Math.round(slope / SLOPE_STEP), MAX_QUANTIZED_SLOPE));
+        return ((int) meters << 16) | quantized;
+    }
+
+}
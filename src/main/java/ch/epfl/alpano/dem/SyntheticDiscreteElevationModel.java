@@ -0,0 +1,286 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Represents a synthetic relief covering a square of 1°x1° tiles, for the
+ * tests and benchmarks which cannot rely on real hgt files. The relief is
+ * fractal noise: the sum of octaves of value noise, each with half the
+ * wavelength and half the amplitude of the previous one, whose values at the
+ * nodes of the lattices are drawn from a hash of a seed. The elevation of a
+ * sample thus only depends on the seed and its index: it is computed on the
+ * fly, without storing anything, and is the same whatever the extent of the
+ * DEM. The elevations are whole meters, as in hgt files, in which the relief
+ * can be written.
+ * <p>
+ * It can be run on its own to write hgt files:
+ * {@code SyntheticDiscreteElevationModel <output directory> <seed> <longitude>
+ * <latitude> <tiles>}, the longitude and latitude being the ones of the
+ * south-west corner, in degrees, and the tiles the number of tiles of a side
+ * of the square.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Math2.bilerp;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.abs;
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.floorMod;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.stream.IntStream;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public final class SyntheticDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    /** The largest number of tiles of a side of the DEM */
+    public final static int MAX_TILES = 10;
+
+    /** The elevations are in [0, MAX_ELEVATION[, in meters */
+    public final static int MAX_ELEVATION = 4000;
+
+    /** The wavelength of the first octave, in samples (about 125 km) */
+    private final static int LARGEST_WAVELENGTH = 1 << 12;
+
+    /** The number of octaves, the last one having a wavelength of 4 samples */
+    private final static int OCTAVES = 11;
+
+    /** The number of samples on a side of a hgt file */
+    private final static int HGT_LENGTH = SAMPLES_PER_DEGREE + 1;
+
+    /** The seed of the relief */
+    private final long seed_;
+
+    /** The longitude of the south-west corner of the DEM, in degrees */
+    private final int longitude_;
+
+    /** The latitude of the south-west corner of the DEM, in degrees */
+    private final int latitude_;
+
+    /** The number of tiles on a side of the DEM */
+    private final int tiles_;
+
+    /** The extent of the DEM */
+    private final Interval2D extent_;
+
+    /**
+     * Creates a synthetic DEM covering a square of tiles
+     *
+     * @param seed
+     *            the seed of the relief, two DEMs with the same seed having
+     *            the same elevations where they overlap
+     * @param longitude
+     *            the longitude of the south-west corner, in degrees
+     * @param latitude
+     *            the latitude of the south-west corner, in degrees
+     * @param tiles
+     *            the number of tiles on a side of the square
+     * @throws IllegalArgumentException
+     *             if the number of tiles is not in [1, MAX_TILES], or if the
+     *             square is not within the valid longitudes and latitudes
+     */
+    public SyntheticDiscreteElevationModel(long seed, int longitude,
+            int latitude, int tiles) {
+        checkArgument(1 <= tiles && tiles <= MAX_TILES,
+                "The number of tiles is not in [1, " + MAX_TILES + "]");
+        checkArgument(-180 <= longitude && longitude + tiles <= 180,
+                "The longitudes are not in [-180, 180]");
+        checkArgument(-90 <= latitude && latitude + tiles <= 90,
+                "The latitudes are not in [-90, 90]");
+        seed_ = seed;
+        longitude_ = longitude;
+        latitude_ = latitude;
+        tiles_ = tiles;
+        extent_ = new Interval2D(
+                new Interval1D(SAMPLES_PER_DEGREE * longitude,
+                        SAMPLES_PER_DEGREE * (longitude + tiles)),
+                new Interval1D(SAMPLES_PER_DEGREE * latitude,
+                        SAMPLES_PER_DEGREE * (latitude + tiles)));
+    }
+
+    /**
+     * Writes the hgt files of a synthetic DEM
+     *
+     * @param args
+     *            the output directory, the seed, the longitude and latitude of
+     *            the south-west corner and the number of tiles of a side
+     * @throws IOException
+     *             if a file could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        checkArgument(args.length == 5,
+                "Usage: SyntheticDiscreteElevationModel <output directory> "
+                        + "<seed> <longitude> <latitude> <tiles>");
+        new SyntheticDiscreteElevationModel(Long.parseLong(args[1]),
+                Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                Integer.parseInt(args[4])).writeHgtFiles(new File(args[0]));
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Interval2D extent() {
+        return extent_;
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        checkArgument(extent_.contains(x, y),
+                "The index is not in this synthetic DEM");
+        // The amplitudes add up to less than 1
+        double noise = 0, amplitude = 0.5;
+        int wavelength = LARGEST_WAVELENGTH;
+        for (int octave = 0; octave < OCTAVES; ++octave) {
+            noise += amplitude * valueNoise(x, y, wavelength, octave);
+            amplitude /= 2;
+            wavelength /= 2;
+        }
+        return Math.floor(MAX_ELEVATION * noise);
+    }
+
+    /**
+     * Writes a hgt file for each tile of the DEM, named after its south-west
+     * corner (e.g. N46E007.hgt). The tiles are written in parallel.
+     *
+     * @param directory
+     *            the directory in which the files are written, which must
+     *            exist
+     * @throws IOException
+     *             if a file could not be written
+     */
+    public void writeHgtFiles(File directory) throws IOException {
+        try {
+            IntStream.range(0, tiles_ * tiles_).parallel().forEach(i -> {
+                int longitude = longitude_ + i % tiles_;
+                int latitude = latitude_ + i / tiles_;
+                try {
+                    writeHgtFile(new File(directory,
+                            hgtName(longitude, latitude)), longitude,
+                            latitude);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gives the name of the hgt file of a tile
+     *
+     * @param longitude
+     *            the longitude of the south-west corner of the tile, in
+     *            degrees
+     * @param latitude
+     *            the latitude of the south-west corner of the tile, in
+     *            degrees
+     * @return the name of the file
+     */
+    static String hgtName(int longitude, int latitude) {
+        return String.format("%s%02d%s%03d.hgt", latitude < 0 ? "S" : "N",
+                abs(latitude), longitude < 0 ? "W" : "E", abs(longitude));
+    }
+
+    /**
+     * Writes the hgt file of a tile: its samples as big-endian shorts, row by
+     * row from the north-west
+     *
+     * @param file
+     *            the file written
+     * @param longitude
+     *            the longitude of the south-west corner of the tile, in
+     *            degrees
+     * @param latitude
+     *            the latitude of the south-west corner of the tile, in
+     *            degrees
+     * @throws IOException
+     *             if the file could not be written
+     */
+    private void writeHgtFile(File file, int longitude, int latitude)
+            throws IOException {
+        int xMin = SAMPLES_PER_DEGREE * longitude;
+        int yMax = SAMPLES_PER_DEGREE * (latitude + 1);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw");
+                FileChannel channel = output.getChannel()) {
+            long size = Short.BYTES * (long) HGT_LENGTH * HGT_LENGTH;
+            output.setLength(size);
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            ShortBuffer samples = buffer.asShortBuffer();
+            for (int y = yMax; y > yMax - HGT_LENGTH; --y) {
+                for (int x = xMin; x < xMin + HGT_LENGTH; ++x) {
+                    samples.put((short) elevationSample(x, y));
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Gives the value noise of an octave at a sample, interpolated between
+     * the values of the four nodes of the lattice around it
+     *
+     * @param x
+     *            the index of the longitude of the sample
+     * @param y
+     *            the index of the latitude of the sample
+     * @param wavelength
+     *            the number of samples between two nodes of the lattice
+     * @param octave
+     *            the index of the octave
+     * @return the noise, in [0, 1[
+     */
+    private double valueNoise(int x, int y, int wavelength, int octave) {
+        int nodeX = floorDiv(x, wavelength), nodeY = floorDiv(y, wavelength);
+        double dx = smoothstep(floorMod(x, wavelength) / (double) wavelength);
+        double dy = smoothstep(floorMod(y, wavelength) / (double) wavelength);
+        return bilerp(node(nodeX, nodeY, octave),
+                node(nodeX + 1, nodeY, octave), node(nodeX, nodeY + 1, octave),
+                node(nodeX + 1, nodeY + 1, octave), dx, dy);
+    }
+
+    /**
+     * Gives the value of a node of the lattice of an octave, drawn from a hash
+     * of the seed, the node and the octave (the finalizer of SplitMix64)
+     *
+     * @param nodeX
+     *            the index of the node along the longitudes
+     * @param nodeY
+     *            the index of the node along the latitudes
+     * @param octave
+     *            the index of the octave
+     * @return the value, in [0, 1[
+     */
+    private double node(int nodeX, int nodeY, int octave) {
+        long h = seed_ + 0x9E3779B97F4A7C15L * (((long) nodeX << 32)
+                ^ (nodeY & 0xFFFFFFFFL)) + 0xC2B2AE3D27D4EB4FL * octave;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Eases an interpolation factor, so that the relief has no creases along
+     * the lines of the lattices
+     *
+     * @param t
+     *            the factor, in [0, 1]
+     * @return the eased factor, in [0, 1]
+     */
+    private static double smoothstep(double t) {
+        return t * t * (3 - 2 * t);
+    }
+
+}
@@ -0,0 +1,152 @@
+package ch.epfl.alpano.dem;
+
+/**
+ * Represents a DEM made of a grid of square tiles of the same size (e.g. the
+ * 1°x1° tiles of the hgt files), two neighbouring tiles sharing the samples of
+ * their common edge. The tile containing a sample is found by integer division
+ * of its index, in constant time, however many tiles there are. The tiles must
+ * cover a whole rectangle.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.util.List;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public final class TileGridDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    /** The tiles of the grid, row by row, from the south-west */
+    private final DiscreteElevationModel[] tiles_;
+
+    /** The number of tiles on a row of the grid */
+    private final int columns_;
+
+    /** The number of samples separating the western edges of two tiles */
+    private final int step_;
+
+    /** The smallest longitude index of the grid */
+    private final int xMin_;
+
+    /** The smallest latitude index of the grid */
+    private final int yMin_;
+
+    /** The extent of the grid */
+    private final Interval2D extent_;
+
+    /**
+     * Creates a DEM from the tiles of a grid, given in any order
+     *
+     * @param tiles
+     *            the tiles
+     * @throws NullPointerException
+     *             if the list or one of its tiles is null
+     * @throws IllegalArgumentException
+     *             if the list is empty, if the tiles are not squares of the
+     *             same size aligned on a grid, or if they do not cover a whole
+     *             rectangle exactly once
+     */
+    public TileGridDiscreteElevationModel(
+            List<? extends DiscreteElevationModel> tiles) {
+        checkArgument(!requireNonNull(tiles, "The list of tiles is null")
+                .isEmpty(), "The list of tiles is empty");
+
+        Interval2D first = requireNonNull(tiles.get(0), "A tile is null")
+                .extent();
+        int size = first.iX().size();
+        checkArgument(size >= 2, "The tiles are too small");
+        step_ = size - 1;
+
+        int xMin = Integer.MAX_VALUE, yMin = Integer.MAX_VALUE;
+        int xMax = Integer.MIN_VALUE, yMax = Integer.MIN_VALUE;
+        for (DiscreteElevationModel tile : tiles) {
+            Interval2D extent = requireNonNull(tile, "A tile is null").extent();
+            checkArgument(extent.iX().size() == size
+                    && extent.iY().size() == size,
+                    "The tiles are not squares of the same size");
+            xMin = min(xMin, extent.iX().includedFrom());
+            yMin = min(yMin, extent.iY().includedFrom());
+            xMax = max(xMax, extent.iX().includedTo());
+            yMax = max(yMax, extent.iY().includedTo());
+        }
+        xMin_ = xMin;
+        yMin_ = yMin;
+        columns_ = (xMax - xMin) / step_;
+        int rows = (yMax - yMin) / step_;
+        checkArgument((long) columns_ * rows == tiles.size(),
+                "The tiles do not cover a whole rectangle");
+
+        tiles_ = new DiscreteElevationModel[tiles.size()];
+        for (DiscreteElevationModel tile : tiles) {
+            Interval2D extent = tile.extent();
+            int dx = extent.iX().includedFrom() - xMin;
+            int dy = extent.iY().includedFrom() - yMin;
+            checkArgument(dx % step_ == 0 && dy % step_ == 0,
+                    "The tiles are not aligned on a grid");
+            int index = (dy / step_) * columns_ + dx / step_;
+            checkArgument(tiles_[index] == null,
+                    "Several tiles cover the same area");
+            tiles_[index] = tile;
+        }
+
+        extent_ = new Interval2D(new Interval1D(xMin, xMax),
+                new Interval1D(yMin, yMax));
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DiscreteElevationModel tile : tiles_) {
+            tile.close();
+        }
+    }
+
+    @Override
+    public Interval2D extent() {
+        return extent_;
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        checkArgument(extent_.contains(x, y),
+                "The index is not in this tile grid DEM");
+        return tile(x, y).elevationSample(x, y);
+    }
+
+    @Override
+    public double slopeSample(int x, int y) {
+        checkArgument(extent_.contains(x, y),
+                "The index is not in this tile grid DEM");
+        DiscreteElevationModel tile = tile(x, y);
+        // A tile only knows the slope of the samples whose eastern and
+        // northern neighbours are in it, the other ones being on its edges
+        Interval2D extent = tile.extent();
+        return extent.contains(x + 1, y) && extent.contains(x, y + 1)
+                ? tile.slopeSample(x, y)
+                : DiscreteElevationModel.super.slopeSample(x, y);
+    }
+
+    /**
+     * Gives the tile containing a sample
+     *
+     * @param x
+     *            the index of the longitude of the sample
+     * @param y
+     *            the index of the latitude of the sample
+     * @return the tile
+     */
+    private DiscreteElevationModel tile(int x, int y) {
+        // The samples of an edge shared by two tiles are read in the western
+        // (or southern) one, as in the union of the tiles
+        int column = max(x - xMin_ - 1, 0) / step_;
+        int row = max(y - yMin_ - 1, 0) / step_;
+        return tiles_[row * columns_ + column];
+    }
+
+}
@@ -0,0 +1,216 @@
+package ch.epfl.alpano.image;
+
+/**
+ * Contains methods packing colors in integers, with 8 bits for each of the
+ * alpha, red, green and blue components (from the most to the least
+ * significant byte). The conversions follow the ones of the JavaFX colors, so
+ * that the colors obtained are the same, without allocating any object. It
+ * also contains the painters built by ArgbPainter, which paint a row by
+ * evaluating each of their channels over the whole row first, into rows
+ * reused by each thread as long as the width of the image does not change.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+final class Argb {
+
+    /** The rows of values of the channels painted last by each thread */
+    private static final ThreadLocal<float[][]> ROWS = ThreadLocal
+            .withInitial(() -> new float[4][0]);
+
+    private Argb() {
+    }
+
+    /** A painter giving colors from their hue, saturation and brightness */
+    static final class HsbPainter implements ArgbPainter {
+        private final ChannelPainter hue_, saturation_, brightness_, opacity_;
+
+        HsbPainter(ChannelPainter hue, ChannelPainter saturation,
+                ChannelPainter brightness, ChannelPainter opacity) {
+            hue_ = requireNonNull(hue, "The hue is null");
+            saturation_ = requireNonNull(saturation, "The saturation is null");
+            brightness_ = requireNonNull(brightness, "The brightness is null");
+            opacity_ = requireNonNull(opacity, "The opacity is null");
+        }
+
+        @Override
+        public int argbAt(int x, int y) {
+            return hsb(hue_.valueAt(x, y), saturation_.valueAt(x, y),
+                    brightness_.valueAt(x, y), opacity_.valueAt(x, y));
+        }
+
+        @Override
+        public void paintRow(int y, int[] argb, int offset, int width) {
+            float[][] rows = rows(width);
+            float[] hues = rows[0], saturations = rows[1];
+            float[] brightnesses = rows[2], opacities = rows[3];
+            hue_.valuesAt(y, hues);
+            saturation_.valuesAt(y, saturations);
+            brightness_.valuesAt(y, brightnesses);
+            opacity_.valuesAt(y, opacities);
+            for (int x = 0; x < width; ++x) {
+                argb[offset + x] = hsb(hues[x], saturations[x],
+                        brightnesses[x], opacities[x]);
+            }
+        }
+    }
+
+    /** A painter giving gray colors */
+    static final class GrayPainter implements ArgbPainter {
+        private final ChannelPainter gray_, opacity_;
+
+        GrayPainter(ChannelPainter gray, ChannelPainter opacity) {
+            gray_ = requireNonNull(gray, "The gray level is null");
+            opacity_ = requireNonNull(opacity, "The opacity is null");
+        }
+
+        @Override
+        public int argbAt(int x, int y) {
+            return gray(gray_.valueAt(x, y), opacity_.valueAt(x, y));
+        }
+
+        @Override
+        public void paintRow(int y, int[] argb, int offset, int width) {
+            float[][] rows = rows(width);
+            float[] grays = rows[0], opacities = rows[1];
+            gray_.valuesAt(y, grays);
+            opacity_.valuesAt(y, opacities);
+            for (int x = 0; x < width; ++x) {
+                argb[offset + x] = gray(grays[x], opacities[x]);
+            }
+        }
+    }
+
+    /**
+     * Gives the rows in which the current thread evaluates the channels of a
+     * painter, allocating them only if the width changed since the last row
+     * it painted
+     *
+     * @param width
+     *            the width of the rows
+     * @return four rows of that width, whose values are not defined
+     */
+    private static float[][] rows(int width) {
+        float[][] rows = ROWS.get();
+        if (rows[0].length != width) {
+            for (int i = 0; i < rows.length; ++i) {
+                rows[i] = new float[width];
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Packs a color given by its hue, saturation, brightness and opacity
+     *
+     * @param hue
+     *            the hue, in degrees (any value, taken modulo 360)
+     * @param saturation
+     *            the saturation, in [0,1]
+     * @param brightness
+     *            the brightness, in [0,1]
+     * @param opacity
+     *            the opacity, in [0,1]
+     * @return the packed color
+     * @throws IllegalArgumentException
+     *             if the saturation, brightness or opacity is not in [0,1]
+     */
+    static int hsb(double hue, double saturation, double brightness,
+            double opacity) {
+        checkComponent(saturation, "The saturation is not in [0,1]");
+        checkComponent(brightness, "The brightness is not in [0,1]");
+        checkComponent(opacity, "The opacity is not in [0,1]");
+
+        if (saturation == 0) {
+            return pack(brightness, brightness, brightness, opacity);
+        }
+
+        double normalizedHue = (((hue % 360) + 360) % 360) / 360;
+        double h = (normalizedHue - Math.floor(normalizedHue)) * 6.0;
+        double f = h - Math.floor(h);
+        double p = brightness * (1.0 - saturation);
+        double q = brightness * (1.0 - saturation * f);
+        double t = brightness * (1.0 - (saturation * (1.0 - f)));
+        // A NaN hue falls in the first sector, as in JavaFX
+        switch ((int) h) {
+        case 0:
+            return pack(brightness, t, p, opacity);
+        case 1:
+            return pack(q, brightness, p, opacity);
+        case 2:
+            return pack(p, brightness, t, opacity);
+        case 3:
+            return pack(p, q, brightness, opacity);
+        case 4:
+            return pack(t, p, brightness, opacity);
+        default:
+            return pack(brightness, p, q, opacity);
+        }
+    }
+
+    /**
+     * Packs a gray color
+     *
+     * @param gray
+     *            the gray level, in [0,1] (0 for black, 1 for white)
+     * @param opacity
+     *            the opacity, in [0,1]
+     * @return the packed color
+     * @throws IllegalArgumentException
+     *             if the gray level or the opacity is not in [0,1]
+     */
+    static int gray(double gray, double opacity) {
+        checkComponent(gray, "The gray level is not in [0,1]");
+        checkComponent(opacity, "The opacity is not in [0,1]");
+        return pack(gray, gray, gray, opacity);
+    }
+
+    /**
+     * Packs a color given by its components, each in [0,1]
+     *
+     * @param red
+     *            the red component
+     * @param green
+     *            the green component
+     * @param blue
+     *            the blue component
+     * @param opacity
+     *            the opacity
+     * @return the packed color
+     */
+    private static int pack(double red, double green, double blue,
+            double opacity) {
+        return (toByte(opacity) << 24) | (toByte(red) << 16)
+                | (toByte(green) << 8) | toByte(blue);
+    }
+
+    /**
+     * Converts a component in [0,1] to an integer in [0,255], rounding it as
+     * the components of a JavaFX color (which are stored as floats)
+     *
+     * @param component
+     *            the component
+     * @return the component as an integer in [0,255]
+     */
+    private static int toByte(double component) {
+        return (int) Math.round((float) component * 255.0);
+    }
+
+    /**
+     * Checks that a component is in [0,1], letting NaN through as JavaFX does
+     *
+     * @param component
+     *            the component
+     * @param message
+     *            the message of the exception thrown if it is not
+     * @throws IllegalArgumentException
+     *             if the component is not in [0,1]
+     */
+    private static void checkComponent(double component, String message) {
+        checkArgument(!(component < 0 || component > 1), message);
+    }
+
+}
@@ -0,0 +1,103 @@
+package ch.epfl.alpano.image;
+
+/**
+ * A functional interface representing an image painter which gives the color
+ * of each point packed in an integer (8 bits for each of the alpha, red, green
+ * and blue components, from the most to the least significant byte). Unlike
+ * an ImagePainter, it does not allocate any object to paint an image.
+ *
+ * @author Niels Poulsen
+ */
+
+import java.nio.IntBuffer;
+
+@FunctionalInterface
+public interface ArgbPainter {
+
+    /**
+     * Gives the color of a certain point in an image
+     *
+     * @param x
+     *            the x-axis coordinate of the point
+     * @param y
+     *            the y-axis coordinate of the point
+     * @return the packed ARGB color of the image at (x,y)
+     */
+    int argbAt(int x, int y);
+
+    /**
+     * Paints a row of an image into an array
+     *
+     * @param y
+     *            the y-axis coordinate of the row
+     * @param argb
+     *            the array in which the colors are written
+     * @param offset
+     *            the index of the array at which the color of the first point
+     *            of the row is written
+     * @param width
+     *            the width of the image
+     */
+    default void paintRow(int y, int[] argb, int offset, int width) {
+        for (int x = 0; x < width; ++x) {
+            argb[offset + x] = argbAt(x, y);
+        }
+    }
+
+    /**
+     * Paints a row of an image into a buffer, at its current position
+     *
+     * @param y
+     *            the y-axis coordinate of the row
+     * @param argb
+     *            the buffer in which the colors are written, whose position is
+     *            advanced by the width of the image
+     * @param width
+     *            the width of the image
+     */
+    default void paintRow(int y, IntBuffer argb, int width) {
+        if (argb.hasArray()) {
+            paintRow(y, argb.array(), argb.arrayOffset() + argb.position(),
+                    width);
+            argb.position(argb.position() + width);
+        } else {
+            for (int x = 0; x < width; ++x) {
+                argb.put(argbAt(x, y));
+            }
+        }
+    }
+
+    /**
+     * Creates an image painter
+     *
+     * @param hue
+     *            the hue of the image painter
+     * @param saturation
+     *            the saturation of the image painter
+     * @param brightness
+     *            the brightness of the image painter
+     * @param opacity
+     *            the opacity of the image painter
+     * @return an image painter that colors an image based on its hue,
+     *         saturation, brightness and opacity, as ImagePainter.hsb does
+     */
+    static ArgbPainter hsb(ChannelPainter hue, ChannelPainter saturation,
+            ChannelPainter brightness, ChannelPainter opacity) {
+        return new Argb.HsbPainter(hue, saturation, brightness, opacity);
+    }
+
+    /**
+     * Creates an image painter
+     *
+     * @param grayHue
+     *            the grey hue of the image painter
+     * @param opacity
+     *            the opacity of the image painter
+     * @return an image painter that colors an image based on its grey hue and
+     *         opacity, as ImagePainter.gray does
+     */
+    static ArgbPainter gray(ChannelPainter grayHue, ChannelPainter opacity) {
+        return new Argb.GrayPainter(grayHue, opacity);
+    }
+
+}
@@ -0,0 +1,212 @@
+package ch.epfl.alpano.image;
+
+/**
+ * Contains the channel painters built by the combinators of ChannelPainter.
+ * Each of them applies a single operation to the values of another painter,
+ * and evaluates a whole row with one loop over the values of that painter, so
+ * that an expression made of several combinators is evaluated one operation
+ * at a time rather than one pixel at a time.
+ *
+ * @author Niels Poulsen
+ */
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.util.function.DoubleUnaryOperator;
+
+import ch.epfl.alpano.Math2;
+
+final class ChannelOperations {
+
+    private ChannelOperations() {
+    }
+
+    /** A painter adding a constant to the values of another one */
+    static final class Sum implements ChannelPainter {
+        private final ChannelPainter source_;
+        private final float d_;
+
+        Sum(ChannelPainter source, float d) {
+            source_ = source;
+            d_ = d;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return source_.valueAt(x, y) + d_;
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] += d_;
+            }
+        }
+    }
+
+    /** A painter subtracting a constant from the values of another one */
+    static final class Difference implements ChannelPainter {
+        private final ChannelPainter source_;
+        private final float d_;
+
+        Difference(ChannelPainter source, float d) {
+            source_ = source;
+            d_ = d;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return source_.valueAt(x, y) - d_;
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] -= d_;
+            }
+        }
+    }
+
+    /** A painter multiplying the values of another one by a constant */
+    static final class Product implements ChannelPainter {
+        private final ChannelPainter source_;
+        private final float d_;
+
+        Product(ChannelPainter source, float d) {
+            source_ = source;
+            d_ = d;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return source_.valueAt(x, y) * d_;
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] *= d_;
+            }
+        }
+    }
+
+    /** A painter dividing the values of another one by a constant */
+    static final class Quotient implements ChannelPainter {
+        private final ChannelPainter source_;
+        private final float d_;
+
+        Quotient(ChannelPainter source, float d) {
+            source_ = source;
+            d_ = d;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return source_.valueAt(x, y) / d_;
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] /= d_;
+            }
+        }
+    }
+
+    /** A painter applying a function to the values of another one */
+    static final class Mapped implements ChannelPainter {
+        private final ChannelPainter source_;
+        private final DoubleUnaryOperator f_;
+
+        Mapped(ChannelPainter source, DoubleUnaryOperator f) {
+            source_ = source;
+            f_ = requireNonNull(f, "The function is null");
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return (float) f_.applyAsDouble(source_.valueAt(x, y));
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] = (float) f_.applyAsDouble(values[x]);
+            }
+        }
+    }
+
+    /** A painter clamping the values of another one between 0 and 1 */
+    static final class Clamped implements ChannelPainter {
+        private final ChannelPainter source_;
+
+        Clamped(ChannelPainter source) {
+            source_ = source;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return max(0, min(source_.valueAt(x, y), 1));
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] = max(0, min(values[x], 1));
+            }
+        }
+    }
+
+    /** A painter taking the values of another one modulo 1 */
+    static final class Cycling implements ChannelPainter {
+        private final ChannelPainter source_;
+
+        Cycling(ChannelPainter source) {
+            source_ = source;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return (float) Math2.floorMod(source_.valueAt(x, y), 1);
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] = (float) Math2.floorMod(values[x], 1);
+            }
+        }
+    }
+
+    /** A painter giving the complementary of the values of another one */
+    static final class Inverted implements ChannelPainter {
+        private final ChannelPainter source_;
+
+        Inverted(ChannelPainter source) {
+            source_ = source;
+        }
+
+        @Override
+        public float valueAt(int x, int y) {
+            return 1 - source_.valueAt(x, y);
+        }
+
+        @Override
+        public void valuesAt(int y, float[] values) {
+            source_.valuesAt(y, values);
+            for (int x = 0; x < values.length; ++x) {
+                values[x] = 1 - values[x];
+            }
+        }
+    }
+
+}
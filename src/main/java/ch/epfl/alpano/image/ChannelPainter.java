@@ -9,11 +9,9 @@ package ch.epfl.alpano.image;
  */
 
 import static java.lang.Math.max;
-import static java.lang.Math.min;
 
 import java.util.function.DoubleUnaryOperator;
 
-import ch.epfl.alpano.Math2;
 import ch.epfl.alpano.Panorama;
 
 @FunctionalInterface
@@ -30,6 +28,23 @@ public interface ChannelPainter {
      */
     float valueAt(int x, int y);
 
+    /**
+     * Gives the values of the channel on a row, from the abscissa 0. The
+     * painters built by the combinators of this interface evaluate a row one
+     * operation at a time, which is faster than evaluating it point by point.
+     *
+     * @param y
+     *            the ordinate of the row
+     * @param values
+     *            the array in which the values are written, whose length is
+     *            the number of points of the row
+     */
+    default void valuesAt(int y, float[] values) {
+        for (int x = 0; x < values.length; ++x) {
+            values[x] = valueAt(x, y);
+        }
+    }
+
     /**
      * Gives a channel painter that attributes to each point a value which
      * corresponds to the difference of distance between the furthest neighbour
@@ -57,7 +72,7 @@ public interface ChannelPainter {
      * @return a new channel painter
      */
     default ChannelPainter add(float d) {
-        return (x, y) -> valueAt(x, y) + d;
+        return new ChannelOperations.Sum(this, d);
     }
 
     /**
@@ -69,7 +84,7 @@ public interface ChannelPainter {
      * @return a new channel painter
      */
     default ChannelPainter sub(float d) {
-        return (x, y) -> valueAt(x, y) - d;
+        return new ChannelOperations.Difference(this, d);
     }
 
     /**
@@ -82,7 +97,7 @@ public interface ChannelPainter {
      * @return a new channel painter
      */
     default ChannelPainter mul(float d) {
-        return (x, y) -> valueAt(x, y) * d;
+        return new ChannelOperations.Product(this, d);
     }
 
     /**
@@ -95,7 +110,7 @@ public interface ChannelPainter {
      * @return a new channel painter
      */
     default ChannelPainter div(float d) {
-        return (x, y) -> valueAt(x, y) / d;
+        return new ChannelOperations.Quotient(this, d);
     }
 
     /**
@@ -108,7 +123,7 @@ public interface ChannelPainter {
      * @return a new channel painter
      */
     default ChannelPainter map(DoubleUnaryOperator f) {
-        return (x, y) -> (float) f.applyAsDouble(valueAt(x, y));
+        return new ChannelOperations.Mapped(this, f);
     }
 
     /**
@@ -118,7 +133,7 @@ public interface ChannelPainter {
      * @return a new channel painter (R => [0,1])
      */
     default ChannelPainter clamped() {
-        return (x, y) -> max(0, min(valueAt(x, y), 1));
+        return new ChannelOperations.Clamped(this);
     }
 
     /**
@@ -128,7 +143,7 @@ public interface ChannelPainter {
      * @return a new channel painter (R => [0,1])
      */
     default ChannelPainter cycling() {
-        return (x, y) -> (float) Math2.floorMod(valueAt(x, y), 1);
+        return new ChannelOperations.Cycling(this);
     }
 
     /**
@@ -138,7 +153,7 @@ public interface ChannelPainter {
      * @return a new channel painter ([0,1] => [0,1])
      */
     default ChannelPainter inverted() {
-        return (x, y) -> 1 - valueAt(x, y);
+        return new ChannelOperations.Inverted(this);
     }
 
 }
@@ -0,0 +1,181 @@
+package ch.epfl.alpano.image;
+
+/**
+ * Represents the last stage of the computation of an image, which paints it
+ * into an array of packed ARGB colors, and possibly reduces its size to
+ * anti-alias it. The rows of the image are split in bands which are processed
+ * in parallel, each into its own part of the array.
+ *
+ * @author Niels Poulsen
+ */
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+public final class ImageRenderer {
+
+    /**
+     * The pool in which the rows are painted, null if they are painted
+     * sequentially
+     */
+    private final ForkJoinPool pool_;
+
+    /**
+     * Creates a renderer which paints the rows of an image one after the other
+     */
+    public ImageRenderer() {
+        pool_ = null;
+    }
+
+    /**
+     * Creates a renderer which paints the rows of an image in a given pool,
+     * possibly shared with other computations. The pool is not shut down by
+     * this.
+     *
+     * @param pool
+     *            the pool in which the rows are painted
+     * @throws NullPointerException
+     *             if the pool is null
+     */
+    public ImageRenderer(ForkJoinPool pool) {
+        pool_ = requireNonNull(pool, "The pool given is null");
+    }
+
+    /**
+     * Paints an image into a new array
+     *
+     * @param painter
+     *            the painter giving the color of each point of the image
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @return the packed ARGB color of each pixel, row by row
+     * @throws IllegalArgumentException
+     *             if the width or the height is negative
+     */
+    public int[] render(ArgbPainter painter, int width, int height) {
+        checkArgument(width >= 0 && height >= 0,
+                "The size of the image is negative");
+        int[] argb = new int[width * height];
+        render(painter, width, height, argb);
+        return argb;
+    }
+
+    /**
+     * Paints an image into an existing array
+     *
+     * @param painter
+     *            the painter giving the color of each point of the image
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @param argb
+     *            the array in which the packed ARGB color of each pixel is
+     *            written, row by row
+     * @throws IllegalArgumentException
+     *             if the width or the height is negative, or if the array is
+     *             too small to hold the image
+     * @throws NullPointerException
+     *             if the painter or the array is null
+     */
+    public void render(ArgbPainter painter, int width, int height,
+            int[] argb) {
+        requireNonNull(painter, "The painter given is null");
+        checkArgument(width >= 0 && height >= 0,
+                "The size of the image is negative");
+        checkArgument(argb.length >= width * height,
+                "The array is too small to hold the image");
+
+        forEachRow(y -> painter.paintRow(y, argb, y * width, width), height);
+    }
+
+    /**
+     * Reduces the size of an image by a given factor, each pixel taking the
+     * average color of a square block of pixels of the original image. Used
+     * to anti-alias an image painted at a higher resolution.
+     *
+     * @param argb
+     *            the packed ARGB color of each pixel of the image, row by row
+     * @param width
+     *            the width of the image, which must be a multiple of the
+     *            factor
+     * @param height
+     *            the height of the image, which must be a multiple of the
+     *            factor
+     * @param factor
+     *            the number of pixels of a side of the blocks
+     * @return the packed ARGB color of each pixel of the reduced image, row by
+     *         row
+     * @throws IllegalArgumentException
+     *             if the factor is not strictly positive, if the size of the
+     *             image is not a multiple of it, or if the array is too small
+     *             to hold the image
+     */
+    public int[] downsample(int[] argb, int width, int height, int factor) {
+        checkArgument(factor > 0, "The factor is not strictly positive");
+        checkArgument(width >= 0 && height >= 0 && width % factor == 0
+                && height % factor == 0,
+                "The size of the image is not a multiple of the factor");
+        checkArgument(argb.length >= width * height,
+                "The array is too small to hold the image");
+        int reducedWidth = width / factor, reducedHeight = height / factor;
+        int[] reduced = new int[reducedWidth * reducedHeight];
+        int samples = factor * factor;
+
+        forEachRow(y -> {
+            for (int x = 0; x < reducedWidth; ++x) {
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int dy = 0; dy < factor; ++dy) {
+                    int from = (y * factor + dy) * width + x * factor;
+                    for (int i = from; i < from + factor; ++i) {
+                        a += argb[i] >>> 24;
+                        r += (argb[i] >> 16) & 0xFF;
+                        g += (argb[i] >> 8) & 0xFF;
+                        b += argb[i] & 0xFF;
+                    }
+                }
+                reduced[y * reducedWidth + x] = average(a, samples) << 24
+                        | average(r, samples) << 16
+                        | average(g, samples) << 8 | average(b, samples);
+            }
+        }, reducedHeight);
+        return reduced;
+    }
+
+    /**
+     * Processes the rows of an image, in parallel if this has a pool
+     *
+     * @param row
+     *            the processing of a single row
+     * @param height
+     *            the number of rows
+     */
+    private void forEachRow(IntConsumer row, int height) {
+        if (pool_ == null) {
+            for (int y = 0; y < height; ++y) {
+                row.accept(y);
+            }
+        } else {
+            pool_.invoke(new RowsTask(row, 0, height));
+        }
+    }
+
+    /**
+     * Gives the rounded average of some values of a color channel
+     *
+     * @param sum
+     *            the sum of the values
+     * @param count
+     *            the number of values
+     * @return the average
+     */
+    private static int average(int sum, int count) {
+        return (sum + count / 2) / count;
+    }
+
+}
@@ -0,0 +1,61 @@
+package ch.epfl.alpano.image;
+
+/**
+ * Represents the painting of a band of rows of an image, which is split in two
+ * halves (painted in parallel) until it is small enough
+ *
+ * @author Niels Poulsen
+ */
+
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+final class RowsTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of rows painted by a single task, below which the rows are
+     * not split among threads anymore
+     */
+    private final static int ROWS_PER_TASK = 8;
+
+    /** The painting of a single row */
+    private final IntConsumer row_;
+
+    /** The index of the first row of the band */
+    private final int from_;
+
+    /** The index following the last row of the band */
+    private final int to_;
+
+    /**
+     * Creates the painting of the rows [from, to[ of an image
+     *
+     * @param row
+     *            the painting of a single row
+     * @param from
+     *            the index of the first row (included)
+     * @param to
+     *            the index of the last row (excluded)
+     */
+    RowsTask(IntConsumer row, int from, int to) {
+        row_ = row;
+        from_ = from;
+        to_ = to;
+    }
+
+    @Override
+    protected void compute() {
+        if (to_ - from_ <= ROWS_PER_TASK) {
+            for (int y = from_; y < to_; ++y) {
+                row_.accept(y);
+            }
+        } else {
+            int middle = (from_ + to_) >>> 1;
+            invokeAll(new RowsTask(row_, from_, middle),
+                    new RowsTask(row_, middle, to_));
+        }
+    }
+
+}
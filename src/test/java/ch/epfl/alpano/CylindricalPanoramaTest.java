@@ -0,0 +1,219 @@
+package ch.epfl.alpano;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+
+public class CylindricalPanoramaTest {
+    private final static GeoPoint OBSERVER = new GeoPoint(0, 0);
+    private final static int HEIGHT = 10, MAX_DISTANCE = 50_000;
+
+    private static PanoramaComputer computer() {
+        return computer(new AtomicBoolean());
+    }
+
+    // The DEM fails north of the observer while the flag is set
+    private static PanoramaComputer computer(AtomicBoolean failNorth) {
+        Interval2D extent = new Interval2D(new Interval1D(-7200, 7200),
+                new Interval1D(-7200, 7200));
+        return new PanoramaComputer(new ContinuousElevationModel(new DiscreteElevationModel() {
+            @Override
+            public Interval2D extent() {
+                return extent;
+            }
+
+            @Override
+            public double elevationSample(int x, int y) {
+                if (failNorth.get() && y > 100) {
+                    throw new IllegalStateException("The DEM failed");
+                }
+                return (1 + sin(2 * PI * x / 100) * cos(2 * PI * y / 100)) * 500;
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+    }
+
+    // One column per degree over the whole circle
+    private static PanoramaParameters parameters(double centerDegrees, int width, int height) {
+        return new PanoramaParameters(OBSERVER, 1000, toRadians(centerDegrees),
+                toRadians(width - 1), MAX_DISTANCE, width, height);
+    }
+
+    private static void assertSamePanorama(Panorama expected, Panorama actual) {
+        PanoramaParameters p = expected.parameters();
+        for (int x = 0; x < p.width(); ++x) {
+            for (int y = 0; y < p.height(); ++y) {
+                assertEquals(expected.distanceAt(x, y), actual.distanceAt(x, y), 1e-2);
+                assertEquals(expected.longitudeAt(x, y), actual.longitudeAt(x, y), 1e-7);
+                assertEquals(expected.elevationAt(x, y), actual.elevationAt(x, y), 1e-2);
+                assertEquals(expected.slopeAt(x, y), actual.slopeAt(x, y), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void columnsForGivesColumnsOverWholeCircle() {
+        assertEquals(360, CylindricalPanorama.columnsFor(parameters(30, 21, HEIGHT)));
+    }
+
+    @Test
+    public void cropMatchesDirectComputationOfAlignedPanorama() {
+        PanoramaComputer computer = computer();
+        CylindricalPanorama c = new CylindricalPanorama(computer, OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        PanoramaParameters p = parameters(30, 21, HEIGHT);
+        assertSamePanorama(computer.computePanorama(p), c.crop(p));
+        assertEquals(21, c.computedColumns());
+    }
+
+    @Test
+    public void panningOnlyComputesNewColumns() {
+        PanoramaComputer computer = computer();
+        CylindricalPanorama c = new CylindricalPanorama(computer, OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        c.crop(parameters(30, 21, HEIGHT));
+        PanoramaParameters panned = parameters(35, 21, HEIGHT);
+        assertSamePanorama(computer.computePanorama(panned), c.crop(panned));
+        assertEquals(26, c.computedColumns());
+        c.crop(parameters(33, 21, HEIGHT));
+        assertEquals(26, c.computedColumns());
+    }
+
+    @Test
+    public void cropWorksAcrossNorth() {
+        PanoramaComputer computer = computer();
+        CylindricalPanorama c = new CylindricalPanorama(computer, OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        c.crop(parameters(355, 9, HEIGHT));
+        // Only the column facing north is missing, and is computed with its eastern neighbour
+        PanoramaParameters across = parameters(356, 9, HEIGHT);
+        assertSamePanorama(computer.computePanorama(across), c.crop(across));
+        assertEquals(11, c.computedColumns());
+    }
+
+    @Test
+    public void concurrentCropsComputeEachColumnOnce() throws Exception {
+        PanoramaComputer computer = computer();
+        CylindricalPanorama c = new CylindricalPanorama(computer, OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Panorama>> crops = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            PanoramaParameters p = parameters(30 + 2 * i, 21, HEIGHT);
+            crops.add(executor.submit(() -> c.crop(p)));
+        }
+        for (int i = 0; i < crops.size(); ++i) {
+            assertSamePanorama(computer.computePanorama(parameters(30 + 2 * i, 21, HEIGHT)), crops.get(i).get());
+        }
+        executor.shutdown();
+        // Columns 20 to 54, each computed by a single crop
+        assertEquals(35, c.computedColumns());
+    }
+
+    @Test(timeout = 10_000)
+    public void failedRunReleasesTheColumnsOfTheFollowingRuns() {
+        AtomicBoolean failNorth = new AtomicBoolean();
+        PanoramaComputer computer = computer(failNorth);
+        CylindricalPanorama c = new CylindricalPanorama(computer, OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        c.crop(parameters(50, 21, HEIGHT));
+        failNorth.set(true);
+        // Columns 10 to 39 facing north-east fail, before columns 61 to 170 are computed
+        try {
+            c.crop(parameters(90, 161, HEIGHT));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(21, c.computedColumns());
+        }
+        // The columns facing south-east were released, and are computed by the next crop
+        PanoramaParameters south = parameters(120, 21, HEIGHT);
+        assertSamePanorama(computer.computePanorama(south), c.crop(south));
+        failNorth.set(false);
+        PanoramaParameters north = parameters(25, 21, HEIGHT);
+        assertSamePanorama(computer.computePanorama(north), c.crop(north));
+    }
+
+    @Test
+    public void cropReportsComputedAndReusedColumns() {
+        CylindricalPanorama c = new CylindricalPanorama(computer(), OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        c.crop(parameters(30, 21, HEIGHT));
+        ComputationMonitor monitor = new ComputationMonitor();
+        c.crop(parameters(35, 21, HEIGHT), monitor);
+        assertEquals(21, monitor.totalColumns());
+        assertEquals(21, monitor.completedColumns());
+        assertEquals(26, c.computedColumns());
+    }
+
+    @Test(timeout = 10_000)
+    public void cancelledCropReleasesItsColumns() {
+        PanoramaComputer computer = computer();
+        CylindricalPanorama c = new CylindricalPanorama(computer, OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        c.crop(parameters(30, 21, HEIGHT));
+        ComputationMonitor cancelled = new ComputationMonitor();
+        cancelled.cancel();
+        try {
+            c.crop(parameters(35, 21, HEIGHT), cancelled);
+            fail();
+        } catch (CancellationException e) {
+            // The 16 columns shared with the first crop are reused
+            assertEquals(16, cancelled.completedColumns());
+        }
+        PanoramaParameters panned = parameters(35, 21, HEIGHT);
+        assertSamePanorama(computer.computePanorama(panned), c.crop(panned));
+        assertEquals(26, c.computedColumns());
+    }
+
+    @Test
+    public void coversOnlyPanoramasOfSameObserverResolutionAndHeight() {
+        CylindricalPanorama c = new CylindricalPanorama(computer(), OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT);
+        assertTrue(c.covers(parameters(123.4, 41, HEIGHT)));
+        assertFalse(c.covers(parameters(30, 21, HEIGHT + 1)));
+        assertFalse(c.covers(new PanoramaParameters(OBSERVER, 1000, 0, toRadians(40), MAX_DISTANCE, 21, HEIGHT)));
+        assertFalse(c.covers(new PanoramaParameters(OBSERVER, 1200, 0, toRadians(20), MAX_DISTANCE, 21, HEIGHT)));
+        assertFalse(c.covers(new PanoramaParameters(new GeoPoint(0, 1e-4), 1000, 0, toRadians(20), MAX_DISTANCE, 21, HEIGHT)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cropFailsForUncoveredPanorama() {
+        new CylindricalPanorama(computer(), OBSERVER, 1000, MAX_DISTANCE, 360, HEIGHT)
+                .crop(parameters(30, 21, HEIGHT + 1));
+    }
+
+    @Test
+    public void cacheReusesPanoramaOfObserver() {
+        PanoramaComputer computer = computer();
+        CylindricalPanoramaCache cache = new CylindricalPanoramaCache(computer, 1 << 20);
+        PanoramaParameters p = parameters(30.4, 21, HEIGHT);
+        Panorama first = cache.panorama(parameters(30, 21, HEIGHT));
+        Panorama panned = cache.panorama(p);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.hits());
+        // The nearest columns of the panned panorama are the ones of the first
+        assertEquals(first.distanceAt(3, 5), panned.distanceAt(3, 5), 0);
+    }
+
+    @Test
+    public void cacheComputesDirectlyPanoramasTooLargeForIt() {
+        PanoramaComputer computer = computer();
+        CylindricalPanoramaCache cache = new CylindricalPanoramaCache(computer, 1000);
+        PanoramaParameters p = parameters(30.4, 21, HEIGHT);
+        assertSamePanorama(computer.computePanorama(p), cache.panorama(p));
+        assertEquals(0, cache.size());
+    }
+}
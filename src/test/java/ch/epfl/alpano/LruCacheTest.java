@@ -0,0 +1,64 @@
+package ch.epfl.alpano;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithNegativeCapacity() {
+        new LruCache<String, int[]>(-1, a -> a.length);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullWeigher() {
+        new LruCache<String, int[]>(10, null);
+    }
+
+    @Test
+    public void getCountsHitsAndMisses() {
+        LruCache<String, int[]> c = new LruCache<>(10, a -> a.length);
+        c.put("a", new int[2]);
+        assertEquals(2, c.get("a").length);
+        assertNull(c.get("b"));
+        assertEquals(2, c.get("a").length);
+        assertEquals(2, c.hits());
+        assertEquals(1, c.misses());
+    }
+
+    @Test
+    public void putEvictsLeastRecentlyUsedValues() {
+        LruCache<String, int[]> c = new LruCache<>(10, a -> a.length);
+        c.put("a", new int[4]);
+        c.put("b", new int[4]);
+        c.get("a");
+        c.put("c", new int[4]);
+        assertNull(c.get("b"));
+        assertEquals(4, c.get("a").length);
+        assertEquals(4, c.get("c").length);
+        assertEquals(1, c.evictions());
+        assertEquals(2, c.size());
+        assertEquals(8, c.weight());
+    }
+
+    @Test
+    public void putReplacesExistingValue() {
+        LruCache<String, int[]> c = new LruCache<>(10, a -> a.length);
+        c.put("a", new int[4]);
+        c.put("a", new int[6]);
+        assertEquals(6, c.get("a").length);
+        assertEquals(6, c.weight());
+        assertEquals(0, c.evictions());
+    }
+
+    @Test
+    public void putIgnoresValuesHeavierThanCapacity() {
+        LruCache<String, int[]> c = new LruCache<>(10, a -> a.length);
+        c.put("a", new int[4]);
+        c.put("b", new int[11]);
+        assertNull(c.get("b"));
+        assertEquals(4, c.get("a").length);
+        assertEquals(4, c.weight());
+    }
+}
@@ -0,0 +1,62 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.alpano.PanoramaComputerTest.wavyContDEM;
+import static ch.epfl.alpano.PanoramaComputerTest.zeroContDEM;
+import static java.lang.Math.cos;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MarchingPanoramaComputerTest {
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullDEM() {
+        new MarchingPanoramaComputer(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroParallelism() {
+        new MarchingPanoramaComputer(zeroContDEM(), 0);
+    }
+
+    @Test
+    public void computePanoramaMatchesPanoramaComputerOnFlatTerrain() {
+        int w = 50, h = 20;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 100, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(zeroContDEM()).computePanorama(pp);
+        Panorama p = new MarchingPanoramaComputer(zeroContDEM()).computePanorama(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y),
+                        PanoramaComputer.EPSILON / cos(pp.altitudeForY(y)));
+                assertEquals(0, p.elevationAt(x, y), 1e-6);
+                assertEquals(0, p.slopeAt(x, y), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void computePanoramaMatchesPanoramaComputerOnHillyTerrain() {
+        int w = 50, h = 60;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h / 2), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p;
+        try (MarchingPanoramaComputer mpc = new MarchingPanoramaComputer(wavyContDEM(), 4)) {
+            p = mpc.computePanorama(pp);
+        }
+        int different = 0;
+        for (int x = 0; x < w; ++x) {
+            // The bottom row is computed exactly in the same way
+            assertEquals(expected.distanceAt(x, h - 1), p.distanceAt(x, h - 1), 0);
+            for (int y = 0; y < h; ++y) {
+                float d0 = expected.distanceAt(x, y), d1 = p.distanceAt(x, y);
+                boolean bothInfinite = Float.isInfinite(d0) && Float.isInfinite(d1);
+                if (!bothInfinite && !(Math.abs(d0 - d1) <= PanoramaComputer.EPSILON / cos(pp.altitudeForY(y))))
+                    ++different;
+            }
+        }
+        // Only rays grazing ridges thinner than DX may differ
+        assertTrue(different <= w * h / 100);
+    }
+}
@@ -6,8 +6,18 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.DoubleUnaryOperator;
 
 import org.junit.Test;
@@ -15,6 +25,8 @@ import org.junit.Test;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.ElevationProfileCache;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
 
 public class PanoramaComputerTest {
     @Test(expected = NullPointerException.class)
@@ -60,6 +72,307 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroParallelism() {
+        new PanoramaComputer(zeroContDEM(), 0);
+    }
+
+    @Test
+    public void parallelComputationGivesSameResultAsSequentialOne() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        Panorama p;
+        try (PanoramaComputer pc = new PanoramaComputer(wavyContDEM(), 4)) {
+            assertEquals(4, pc.parallelism());
+            p = pc.computePanorama(pp);
+        }
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 0);
+                assertEquals(expected.longitudeAt(x, y), p.longitudeAt(x, y), 0);
+                assertEquals(expected.latitudeAt(x, y), p.latitudeAt(x, y), 0);
+                assertEquals(expected.elevationAt(x, y), p.elevationAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void skippingEmptySpaceGivesSameResultAsFullSearch() {
+        int w = 50, h = 40;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem);
+        Panorama expected = new PanoramaComputer(cem).computePanorama(pp);
+        Panorama p = new PanoramaComputer(cem, new MaxElevationPyramid(dem), 1).computePanorama(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 1e-3);
+                assertEquals(expected.longitudeAt(x, y), p.longitudeAt(x, y), 1e-9);
+                assertEquals(expected.latitudeAt(x, y), p.latitudeAt(x, y), 1e-9);
+                assertEquals(expected.elevationAt(x, y), p.elevationAt(x, y), 1e-3);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void cachedProfilesAreReusedAcrossPanoramas() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaParameters taller = new PanoramaParameters(o, 2500, toRadians(45), toRadians(h), 300_000, w, 2 * h);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ElevationProfileCache profiles = new ElevationProfileCache(cem, 1 << 20, 1e-6);
+        PanoramaComputer pc = new PanoramaComputer(profiles, new MaxElevationPyramid(dem), pool);
+        Panorama expected = new PanoramaComputer(cem).computePanorama(pp);
+        Panorama p = pc.computePanorama(pp);
+        pc.computePanorama(taller);
+        pool.shutdown();
+        assertEquals(w, profiles.misses());
+        assertEquals(w, profiles.hits());
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 1e-2);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void cachedProfilesAreReusedWhenWidthOrFieldOfViewChanges() {
+        int w = 200, h = 10;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(40), 300_000, w, h);
+        PanoramaParameters wider = new PanoramaParameters(o, 2000, toRadians(45), toRadians(40), 300_000, w + 17, h);
+        PanoramaParameters larger = new PanoramaParameters(o, 2000, toRadians(45), toRadians(43), 300_000, w, h);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        ElevationProfileCache profiles = new ElevationProfileCache(cem, 1 << 24, 0.5);
+        PanoramaComputer pc = new PanoramaComputer(profiles, new MaxElevationPyramid(dem), pool);
+        pc.computePanorama(pp);
+        assertEquals(0, profiles.hits());
+        pc.computePanorama(wider);
+        long widerHits = profiles.hits();
+        pc.computePanorama(larger);
+        pool.shutdown();
+        // About a quarter to a half of the columns land in a bucket already built
+        assertTrue(widerHits >= w / 5);
+        assertTrue(profiles.hits() - widerHits >= w / 5);
+    }
+
+    @Test
+    public void seededComputationGivesSameResultAsFullOne() {
+        int w = 41, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        PanoramaComputer pc = new PanoramaComputer(new ContinuousElevationModel(dem));
+        // One column per degree, panned by 5 columns
+        PanoramaParameters first = new PanoramaParameters(o, 2000, toRadians(45), toRadians(w - 1), 300_000, w, h);
+        PanoramaParameters panned = new PanoramaParameters(o, 2000, toRadians(50), toRadians(w - 1), 300_000, w, h);
+        Panorama seed = pc.computePanorama(first);
+        Panorama expected = pc.computePanorama(panned);
+        Panorama p = pc.computePanorama(panned, seed);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 1e-3);
+                assertEquals(expected.longitudeAt(x, y), p.longitudeAt(x, y), 1e-9);
+                assertEquals(expected.elevationAt(x, y), p.elevationAt(x, y), 1e-3);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 1e-6);
+            }
+        }
+        // The columns shared with the seed are copied
+        for (int y = 0; y < h; ++y) {
+            assertEquals(seed.distanceAt(10, y), p.distanceAt(5, y), 0);
+        }
+    }
+
+    @Test
+    public void seededComputationReportsCopiedColumnsAndStopsWhenCancelled() {
+        int w = 21, h = 10;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        PanoramaParameters first = new PanoramaParameters(o, 2000, toRadians(45), toRadians(w - 1), 300_000, w, h);
+        PanoramaParameters panned = new PanoramaParameters(o, 2000, toRadians(50), toRadians(w - 1), 300_000, w, h);
+        Panorama seed = pc.computePanorama(first);
+        ComputationMonitor monitor = new ComputationMonitor();
+        pc.computePanorama(panned, seed, monitor);
+        assertEquals(w, monitor.totalColumns());
+        assertEquals(w, monitor.completedColumns());
+
+        ComputationMonitor cancelled = new ComputationMonitor();
+        cancelled.cancel();
+        try {
+            pc.computePanorama(panned, seed, cancelled);
+            fail();
+        } catch (CancellationException e) {
+            assertEquals(0, cancelled.completedColumns());
+        }
+    }
+
+    @Test
+    public void seedWithOtherRaysIsIgnored() {
+        int w = 21, h = 10;
+        GeoPoint o = new GeoPoint(0,0);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        PanoramaComputer pc = new PanoramaComputer(new ContinuousElevationModel(dem));
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(w - 1), 300_000, w, h);
+        Panorama higher = pc.computePanorama(new PanoramaParameters(o, 2500, toRadians(45), toRadians(w - 1), 300_000, w, h));
+        Panorama expected = pc.computePanorama(pp);
+        Panorama p = pc.computePanorama(pp, higher);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void progressiveComputationEndsWithFullPanorama() {
+        int w = 50, h = 30;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem);
+        Panorama expected = new PanoramaComputer(cem).computePanorama(pp);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<Integer> strides = new ArrayList<>();
+        List<Panorama> stages = new ArrayList<>();
+        Panorama p = new PanoramaComputer(cem, new MaxElevationPyramid(dem), pool)
+                .computePanorama(pp, 8, (stage, stride) -> {
+                    stages.add(stage);
+                    strides.add(stride);
+                });
+        pool.shutdown();
+        assertEquals(Arrays.asList(8, 4, 2, 1), strides);
+        assertSame(p, stages.get(3));
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 0);
+                assertEquals(expected.elevationAt(x, y), p.elevationAt(x, y), 0);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 0);
+                // The coarsest stage replicates its points over blocks of 8x8, which are searched from further below
+                assertEquals(stages.get(0).distanceAt(x - x % 8, y - y % 8), stages.get(0).distanceAt(x, y), 0);
+                assertEquals(p.distanceAt(x - x % 8, y - y % 8), stages.get(0).distanceAt(x, y), 10);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void progressiveComputationFailsWithStrideNotPowerOfTwo() {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, 0, 1, 300_000, 10, 10);
+        new PanoramaComputer(zeroContDEM()).computePanorama(pp, 6, (p, s) -> {});
+    }
+
+    @Test
+    public void columnBatchesGiveSameResultAsFullComputation() {
+        int w = 45, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama expected = pc.computePanorama(pp);
+        List<Integer> starts = new ArrayList<>();
+        pc.computeColumnBatches(pp, 11, (batch, from) -> {
+            starts.add(from);
+            for (int x = 0; x < batch.parameters().width(); ++x) {
+                for (int y = 0; y < h; ++y) {
+                    assertEquals(expected.distanceAt(from + x, y), batch.distanceAt(x, y), 1e-3);
+                    assertEquals(expected.slopeAt(from + x, y), batch.slopeAt(x, y), 1e-6);
+                }
+            }
+        });
+        // The last column is added to the previous batch
+        assertEquals(Arrays.asList(0, 11, 22, 33), starts);
+    }
+
+    @Test
+    public void columnBatchesComputedAheadComeInOrder() {
+        int w = 90, h = 10;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        List<Integer> starts = new ArrayList<>();
+        try (PanoramaComputer pc = new PanoramaComputer(wavyContDEM(), 2)) {
+            pc.computeColumnBatches(pp, 4, (batch, from) -> {
+                starts.add(from);
+                for (int x = 0; x < batch.parameters().width(); ++x) {
+                    assertEquals(expected.distanceAt(from + x, 5), batch.distanceAt(x, 5), 0);
+                }
+            });
+        }
+        assertEquals(23, starts.size());
+        for (int i = 0; i < starts.size(); ++i) {
+            assertEquals(4 * i, (int) starts.get(i));
+        }
+    }
+
+    @Test
+    public void monitorReportsAllColumns() {
+        int w = 30, h = 10;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        ComputationMonitor monitor = new ComputationMonitor();
+        assertEquals(0, monitor.progress(), 0);
+        Panorama p;
+        try (PanoramaComputer pc = new PanoramaComputer(wavyContDEM(), 3)) {
+            p = pc.computePanorama(pp, monitor);
+        }
+        assertEquals(w, monitor.totalColumns());
+        assertEquals(w, monitor.completedColumns());
+        assertEquals(1, monitor.progress(), 0);
+        Panorama expected = new PanoramaComputer(wavyContDEM()).computePanorama(pp);
+        assertEquals(expected.distanceAt(7, 5), p.distanceAt(7, 5), 0);
+    }
+
+    @Test
+    public void cancelledComputationStopsBeforeNextColumn() {
+        int w = 40, h = 10;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        ComputationMonitor monitor = new ComputationMonitor();
+        monitor.cancel();
+        try (PanoramaComputer pc = new PanoramaComputer(wavyContDEM(), 2)) {
+            pc.computePanorama(pp, monitor);
+            fail();
+        } catch (CancellationException e) {
+            assertTrue(monitor.isCancelled());
+            assertEquals(0, monitor.completedColumns());
+        }
+    }
+
+    @Test
+    public void computationInSharedPoolGivesSameResultAsSequentialOne() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        DiscreteElevationModel dem = new WavyDEM(new Interval2D(
+                new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3)));
+        ContinuousElevationModel cem = new ContinuousElevationModel(dem);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        Panorama expected = new PanoramaComputer(cem).computePanorama(pp);
+        PanoramaComputer pc = new PanoramaComputer(cem, new MaxElevationPyramid(dem), pool);
+        assertEquals(3, pc.parallelism());
+        Panorama p = pc.computePanorama(pp);
+        pc.close();
+        assertFalse(pool.isShutdown());
+        pool.shutdown();
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertEquals(expected.distanceAt(x, y), p.distanceAt(x, y), 1e-3);
+                assertEquals(expected.slopeAt(x, y), p.slopeAt(x, y), 1e-6);
+            }
+        }
+    }
+
     @Test
     public void rayToGroundDistanceAccountsForEarthCurvatureAndRefraction() {
         double dropPerM2 = (1d - 0.13d) / (2d * 6_371_000d);
@@ -74,17 +387,45 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test
+    public void rayToGroundEvaluatorMatchesRayToGroundDistance() {
+        ElevationProfile p = new ElevationProfile(wavyContDEM(), new GeoPoint(0,0), toRadians(45), 100_000);
+        DoubleUnaryOperator rToG = PanoramaComputer.rayToGroundDistance(p, 1000, 0.01);
+        RayToGroundDistance evaluator = PanoramaComputer.rayToGroundEvaluator(p, 1000, 0.01);
+        for (int k = 0; k <= 1000; ++k) {
+            double m = k * 100d;
+            assertEquals(rToG.applyAsDouble(m), evaluator.valueAt(m), 0);
+        }
+    }
+
+    @Test
+    public void rootFindingOnEvaluatorMatchesRootFindingOnFunction() {
+        ElevationProfile p = new ElevationProfile(wavyContDEM(), new GeoPoint(0,0), toRadians(45), 100_000);
+        for (int k = 0; k < 20; ++k) {
+            double slope = -0.05 + k * 0.001;
+            DoubleUnaryOperator rToG = PanoramaComputer.rayToGroundDistance(p, 2000, slope);
+            RayToGroundDistance evaluator = PanoramaComputer.rayToGroundEvaluator(p, 2000, slope);
+            double expectedStart = Math2.firstIntervalContainingRoot(rToG, 13, 100_000, 64);
+            double start = Math2.firstIntervalContainingRoot(evaluator, 13, 100_000, 64);
+            assertEquals(expectedStart, start, 0);
+            if (start != Double.POSITIVE_INFINITY) {
+                assertEquals(Math2.improveRoot(rToG, start, start + 64, 1),
+                        Math2.improveRoot(evaluator, start, start + 64, 1), 0);
+            }
+        }
+    }
+
     private static Interval2D positiveQuadrant() {
         return new Interval2D(
                 new Interval1D(0, 3600 * 179),
                 new Interval1D(0, 3600 * 89));
     }
 
-    private static ContinuousElevationModel zeroContDEM() {
+    static ContinuousElevationModel zeroContDEM() {
         return new ContinuousElevationModel(new ZeroDEM(positiveQuadrant()));
     }
 
-    private static ContinuousElevationModel wavyContDEM() {
+    static ContinuousElevationModel wavyContDEM() {
         return new ContinuousElevationModel(new WavyDEM(positiveQuadrant()));
     }
 
@@ -1138,4 +1479,12 @@ public class PanoramaComputerTest {
             15872.333984f, 0.002036f, 0.001426f, 942.660400f, 0.396299f
     };
 
+
+    @Test(expected = RejectedExecutionException.class)
+    public void closedComputerShutsItsOwnPoolDown() {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(10), 300_000, 30, 10);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM(), 2);
+        pc.close();
+        pc.computePanorama(pp);
+    }
 }
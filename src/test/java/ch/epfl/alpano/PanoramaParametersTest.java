@@ -115,6 +115,24 @@ public class PanoramaParametersTest {
 		pp.altitudeForY(7.05);
 	}
 	
+	@Test
+	public void columnsFaceSameAzimuthsAndAltitudes(){
+		PanoramaParameters c = pp.columns(2, 6);
+		assertEquals(4, c.width());
+		assertEquals(pp.height(), c.height());
+		for (int x = 0; x < 4; ++x)
+			assertEquals(pp.azimuthForX(x + 2), c.azimuthForX(x), 1e-12);
+		assertEquals(pp.altitudeForY(3), c.altitudeForY(3), 1e-12);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void columnsThrowsWithSingleColumn(){
+		pp.columns(3, 4);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void columnsThrowsOutsideThePanorama(){
+		pp.columns(5, 9);
+	}
+	
 }
-
-
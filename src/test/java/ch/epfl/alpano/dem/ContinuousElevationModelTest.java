@@ -0,0 +1,78 @@
+package ch.epfl.alpano.dem;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.DoubleBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class ContinuousElevationModelTest {
+    private static ContinuousElevationModel cem() {
+        Interval2D extent = new Interval2D(new Interval1D(-3600, 7200),
+                new Interval1D(-3600, 3600));
+        return new ContinuousElevationModel(new DiscreteElevationModel() {
+            @Override
+            public Interval2D extent() {
+                return extent;
+            }
+
+            @Override
+            public double elevationSample(int x, int y) {
+                return (x * 31 + y * 17) % 1000;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @Test
+    public void elevationsAtMatchesElevationAt() {
+        ContinuousElevationModel cem = cem();
+        Random rng = new Random(7);
+        int n = 5000;
+        double[] lons = new double[n], lats = new double[n];
+        for (int i = 0; i < n; ++i) {
+            lons[i] = toRadians(rng.nextDouble() * 5 - 1.5);
+            lats[i] = toRadians(rng.nextDouble() * 3 - 1.5);
+        }
+        double[] elevations = new double[n];
+        cem.elevationsAt(lons, lats, elevations);
+        for (int i = 0; i < n; ++i) {
+            assertEquals(cem.elevationAt(new GeoPoint(lons[i], lats[i])), elevations[i], 0);
+        }
+
+        DoubleBuffer buffer = DoubleBuffer.allocate(n + 2);
+        buffer.position(2);
+        cem.elevationsAt(DoubleBuffer.wrap(lons), DoubleBuffer.wrap(lats), buffer);
+        assertEquals(n + 2, buffer.position());
+        buffer.position(2);
+        double[] fromBuffer = new double[n];
+        buffer.get(fromBuffer);
+        assertArrayEquals(elevations, fromBuffer, 0);
+    }
+
+    @Test
+    public void slopeAtWithCoordinatesMatchesSlopeAtGeoPoint() {
+        ContinuousElevationModel cem = cem();
+        Random rng = new Random(11);
+        for (int i = 0; i < 500; ++i) {
+            double lon = toRadians(rng.nextDouble() * 5 - 1.5);
+            double lat = toRadians(rng.nextDouble() * 3 - 1.5);
+            assertEquals(cem.slopeAt(new GeoPoint(lon, lat)), cem.slopeAt(lon, lat), 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationsAtFailsWithArraysOfDifferentLengths() {
+        cem().elevationsAt(new double[2], new double[2], new double[3]);
+    }
+}
@@ -0,0 +1,113 @@
+package ch.epfl.alpano.dem;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class ElevationProfileCacheTest {
+    private static ContinuousElevationModel cem() {
+        Interval2D extent = new Interval2D(new Interval1D(-3600, 3600),
+                new Interval1D(-3600, 3600));
+        return new ContinuousElevationModel(new DiscreteElevationModel() {
+            @Override
+            public Interval2D extent() {
+                return extent;
+            }
+
+            @Override
+            public double elevationSample(int x, int y) {
+                return (x * 31 + y * 17) % 1000;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    private static final GeoPoint ORIGIN = new GeoPoint(toRadians(0.1), toRadians(0.2));
+
+    // With a column of 2^-9 radians and a fraction of 1/2, the quantum is 2^-10
+    private static final double COLUMN = Math.scalb(1.0, -9), QUANTUM = Math.scalb(1.0, -10);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroFraction() {
+        new ElevationProfileCache(cem(), 1000, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithFractionAboveOne() {
+        new ElevationProfileCache(cem(), 1000, 1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void profileFailsWithNonCanonicalAzimuth() {
+        new ElevationProfileCache(cem(), 1000, 0.5).profile(ORIGIN, 2 * PI, 1000, COLUMN);
+    }
+
+    @Test
+    public void quantumIsLargestPowerOfTwoBelowFractionOfColumn() {
+        ElevationProfileCache c = new ElevationProfileCache(cem(), 1000, 0.5);
+        assertEquals(QUANTUM, c.quantum(COLUMN), 0);
+        assertEquals(QUANTUM, c.quantum(COLUMN * 1.9), 0);
+        assertEquals(QUANTUM / 2, c.quantum(COLUMN * 0.9), 0);
+    }
+
+    @Test
+    public void profilesAreSharedWithinAQuantum() {
+        ElevationProfileCache c = new ElevationProfileCache(cem(), 1 << 20, 0.5);
+        double a = 1000 * QUANTUM;
+        ElevationProfile p = c.profile(ORIGIN, a + 0.1 * QUANTUM, 50_000, COLUMN);
+        assertSame(p, c.profile(ORIGIN, a + 0.2 * QUANTUM, 50_000, COLUMN));
+        // A slightly wider column has the same quantum
+        assertSame(p, c.profile(ORIGIN, a - 0.3 * QUANTUM, 50_000, COLUMN * 1.2));
+        assertNotSame(p, c.profile(ORIGIN, a + 0.6 * QUANTUM, 50_000, COLUMN));
+        assertNotSame(p, c.profile(ORIGIN, a, 60_000, COLUMN));
+        assertNotSame(p, c.profile(new GeoPoint(0, 0), a, 50_000, COLUMN));
+        assertEquals(2, c.hits());
+        assertEquals(4, c.misses());
+        assertEquals(4, c.size());
+    }
+
+    @Test
+    public void profilesAreBuiltWithRoundedAzimuth() {
+        ElevationProfileCache c = new ElevationProfileCache(cem(), 1 << 20, 0.5);
+        double a = 1000 * QUANTUM;
+        ElevationProfile rounded = new ElevationProfile(cem(), ORIGIN, a, 50_000);
+        ElevationProfile p = c.profile(ORIGIN, a + 0.4 * QUANTUM, 50_000, COLUMN);
+        for (double x = 0; x <= 50_000; x += 1000) {
+            assertEquals(rounded.longitudeAt(x), p.longitudeAt(x), 1e-12);
+            assertEquals(rounded.latitudeAt(x), p.latitudeAt(x), 1e-12);
+        }
+    }
+
+    @Test
+    public void azimuthsRoundedBeyondFullCircleWrapAround() {
+        ElevationProfileCache c = new ElevationProfileCache(cem(), 1 << 20, 0.5);
+        ElevationProfile north = new ElevationProfile(cem(), ORIGIN, 0, 10_000);
+        ElevationProfile p = c.profile(ORIGIN, 2 * PI - 1e-5, 10_000, COLUMN);
+        // Moved by at most half a quantum, i.e. less than 5 m at 10 km
+        assertEquals(north.longitudeAt(10_000), p.longitudeAt(10_000), 1e-6);
+        assertEquals(north.latitudeAt(10_000), p.latitudeAt(10_000), 1e-6);
+    }
+
+    @Test
+    public void leastRecentlyUsedProfilesAreEvicted() {
+        // Each profile of 10 km has 4 points of 16 bytes
+        ElevationProfileCache c = new ElevationProfileCache(cem(), 2 * 64, 0.5);
+        ElevationProfile a = c.profile(ORIGIN, 0.1, 10_000, COLUMN);
+        c.profile(ORIGIN, 0.2, 10_000, COLUMN);
+        c.profile(ORIGIN, 0.1, 10_000, COLUMN);
+        c.profile(ORIGIN, 0.3, 10_000, COLUMN);
+        assertEquals(2, c.size());
+        assertSame(a, c.profile(ORIGIN, 0.1, 10_000, COLUMN));
+    }
+}
@@ -0,0 +1,65 @@
+package ch.epfl.alpano.dem;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class ElevationProfileTest {
+    private static ElevationProfile profile(double length) {
+        Interval2D extent = new Interval2D(new Interval1D(-3600, 7200),
+                new Interval1D(-3600, 3600));
+        ContinuousElevationModel cem = new ContinuousElevationModel(new DiscreteElevationModel() {
+            @Override
+            public Interval2D extent() {
+                return extent;
+            }
+
+            @Override
+            public double elevationSample(int x, int y) {
+                return (x * 31 + y * 17) % 1000;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        return new ElevationProfile(cem, new GeoPoint(toRadians(0.5), toRadians(0.2)),
+                toRadians(40), length);
+    }
+
+    @Test
+    public void coordinatesMatchPositionAt() {
+        ElevationProfile profile = profile(100_000);
+        for (double x = 0; x <= 100_000; x += 997) {
+            GeoPoint p = profile.positionAt(x);
+            assertEquals(p.longitude(), profile.longitudeAt(x), 0);
+            assertEquals(p.latitude(), profile.latitudeAt(x), 0);
+        }
+    }
+
+    @Test
+    public void coordinatesStartAtOriginAndFollowAzimuth() {
+        ElevationProfile profile = profile(100_000);
+        assertEquals(toRadians(0.5), profile.longitudeAt(0), 1e-12);
+        assertEquals(toRadians(0.2), profile.latitudeAt(0), 1e-12);
+        // Heading north-east, both coordinates grow along the profile
+        assertTrue(profile.longitudeAt(4096) > profile.longitudeAt(0));
+        assertTrue(profile.latitudeAt(4096) > profile.latitudeAt(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void longitudeAtFailsOutsideProfile() {
+        profile(10_000).longitudeAt(10_001);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void latitudeAtFailsOnNegativeDistance() {
+        profile(10_000).latitudeAt(-1);
+    }
+}
@@ -0,0 +1,142 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class HgtTileCatalogTest {
+    private static final int LENGTH = SAMPLES_PER_DEGREE + 1;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a hgt file whose samples are all 0, except the one next to its
+     * south-west corner (on its southern edge) and its north-east one
+     */
+    private File hgt(String name, short southWest, short northEast) throws IOException {
+        File file = folder.newFile(name);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(2L * LENGTH * LENGTH);
+            f.seek(2L * (LENGTH * (LENGTH - 1) + 1));
+            f.writeShort(southWest);
+            f.seek(2L * (LENGTH - 1));
+            f.writeShort(northEast);
+        }
+        return file;
+    }
+
+    @Test
+    public void catalogIndexesTilesByName() throws IOException {
+        hgt("N45E006.hgt", (short) 100, (short) 200);
+        hgt("N46E008.hgt", (short) 300, (short) 400);
+        folder.newFile("notes.txt");
+        HgtTileCatalog catalog = new HgtTileCatalog(folder.getRoot(), 4);
+
+        assertEquals(new Interval2D(
+                new Interval1D(6 * SAMPLES_PER_DEGREE, 9 * SAMPLES_PER_DEGREE),
+                new Interval1D(45 * SAMPLES_PER_DEGREE, 47 * SAMPLES_PER_DEGREE)),
+                catalog.extent());
+        assertEquals(0, catalog.mappedTiles());
+        assertEquals(100, catalog.elevationSample(6 * SAMPLES_PER_DEGREE + 1, 45 * SAMPLES_PER_DEGREE), 0);
+        assertEquals(200, catalog.elevationSample(7 * SAMPLES_PER_DEGREE, 46 * SAMPLES_PER_DEGREE), 0);
+        assertEquals(1, catalog.mappedTiles());
+        assertEquals(400, catalog.elevationSample(9 * SAMPLES_PER_DEGREE, 47 * SAMPLES_PER_DEGREE), 0);
+        assertEquals(2, catalog.mappedTiles());
+    }
+
+    @Test
+    public void sharedEdgeIsReadInExistingTile() throws IOException {
+        hgt("N45E006.hgt", (short) 100, (short) 200);
+        hgt("N46E007.hgt", (short) 300, (short) 400);
+        HgtTileCatalog catalog = new HgtTileCatalog(folder.getRoot(), 4);
+        // The corner shared by both tiles is read in the south-western one
+        assertEquals(200, catalog.elevationSample(7 * SAMPLES_PER_DEGREE, 46 * SAMPLES_PER_DEGREE), 0);
+        // The tile N45E007 has no file, but its northern edge is read in the tile N46E007
+        assertEquals(0, catalog.elevationSample(7 * SAMPLES_PER_DEGREE + 10, 45 * SAMPLES_PER_DEGREE + 10), 0);
+        assertEquals(0, catalog.elevationSample(8 * SAMPLES_PER_DEGREE, 46 * SAMPLES_PER_DEGREE - 1), 0);
+        assertEquals(300, catalog.elevationSample(7 * SAMPLES_PER_DEGREE + 1, 46 * SAMPLES_PER_DEGREE), 0);
+    }
+
+    @Test
+    public void leastRecentlyUsedTileIsDropped() throws IOException {
+        hgt("N45E006.hgt", (short) 1, (short) 0);
+        hgt("N45E007.hgt", (short) 2, (short) 0);
+        hgt("N45E008.hgt", (short) 3, (short) 0);
+        HgtTileCatalog catalog = new HgtTileCatalog(folder.getRoot(), 2);
+        int y = 45 * SAMPLES_PER_DEGREE;
+        catalog.elevationSample(6 * SAMPLES_PER_DEGREE + 1, y);
+        catalog.elevationSample(7 * SAMPLES_PER_DEGREE + 1, y);
+        catalog.elevationSample(6 * SAMPLES_PER_DEGREE + 1, y);
+        assertEquals(2, catalog.loads());
+
+        // E007 is the least recently used one
+        assertEquals(3, catalog.elevationSample(8 * SAMPLES_PER_DEGREE + 1, y), 0);
+        assertEquals(2, catalog.mappedTiles());
+        assertEquals(1, catalog.elevationSample(6 * SAMPLES_PER_DEGREE + 1, y), 0);
+        assertEquals(3, catalog.loads());
+        assertEquals(2, catalog.elevationSample(7 * SAMPLES_PER_DEGREE + 1, y), 0);
+        assertEquals(4, catalog.loads());
+    }
+
+    @Test
+    public void mappedTilesNeverExceedTheMaximum() throws IOException {
+        hgt("N45E006.hgt", (short) 1, (short) 0);
+        hgt("N45E007.hgt", (short) 2, (short) 0);
+        hgt("N45E008.hgt", (short) 3, (short) 0);
+        HgtTileCatalog catalog = new HgtTileCatalog(folder.getRoot(), 2);
+        int y = 45 * SAMPLES_PER_DEGREE;
+        for (int i = 0; i < 30; ++i) {
+            int tile = (i * 7) % 3;
+            assertEquals(tile + 1, catalog.elevationSample((6 + tile) * SAMPLES_PER_DEGREE + 1, y), 0);
+            assertTrue(catalog.mappedTiles() <= 2);
+        }
+    }
+
+    @Test
+    public void precomputedTilesAreReadInsteadOfHgtFiles() throws IOException {
+        hgt("N45E006.hgt", (short) 100, (short) 200);
+        int x = 6 * SAMPLES_PER_DEGREE, y = 45 * SAMPLES_PER_DEGREE;
+        HgtTileCatalog hgtOnly = new HgtTileCatalog(folder.getRoot(), 1);
+        double[] elevations = new double[3], slopes = new double[3];
+        for (int dx = 0; dx < 3; ++dx) {
+            elevations[dx] = hgtOnly.elevationSample(x + dx, y);
+            slopes[dx] = hgtOnly.slopeSample(x + dx, y);
+        }
+
+        File output = folder.newFolder("dem");
+        PrecomputedTileConverter.convertDirectory(folder.getRoot(), output);
+        assertEquals(4L * (6 + LENGTH * LENGTH), new File(output, "N45E006.dem").length());
+        hgt("dem/N45E006.hgt", (short) -1, (short) -1);
+
+        HgtTileCatalog catalog = new HgtTileCatalog(output, 1);
+        for (int dx = 0; dx < 3; ++dx) {
+            assertEquals(elevations[dx], catalog.elevationSample(x + dx, y), 0);
+            assertEquals(slopes[dx], catalog.slopeSample(x + dx, y), 1e-4);
+        }
+        assertEquals(1, catalog.loads());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutHgtFiles() throws IOException {
+        folder.newFile("N45E006.txt");
+        new HgtTileCatalog(folder.getRoot(), 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroMappedTiles() throws IOException {
+        hgt("N45E006.hgt", (short) 1, (short) 0);
+        new HgtTileCatalog(folder.getRoot(), 0);
+    }
+}
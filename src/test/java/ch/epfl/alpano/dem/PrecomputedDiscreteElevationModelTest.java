@@ -0,0 +1,122 @@
+package ch.epfl.alpano.dem;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.sin;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class PrecomputedDiscreteElevationModelTest {
+    private static final double SLOPE_TOLERANCE = (PI / 2) / 0xFFFF;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** A DEM made of steep integer waves */
+    private static final class WavyDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+
+        WavyDEM(Interval2D extent) {
+            this.extent = extent;
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (!extent.contains(x, y))
+                throw new IllegalArgumentException();
+            return Math.round(1000 + 900 * sin(x / 7d) * sin(y / 5d));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Interval2D extent(int xFrom, int xTo, int yFrom, int yTo) {
+        return new Interval2D(new Interval1D(xFrom, xTo),
+                new Interval1D(yFrom, yTo));
+    }
+
+    @Test
+    public void convertedDEMHasSameElevationsAndSlopes() throws IOException {
+        DiscreteElevationModel source = new WavyDEM(extent(-30, 40, 100, 150));
+        File file = folder.newFile("tile.dem");
+        PrecomputedTileConverter.convert(source, extent(-20, 30, 110, 140), file);
+        DiscreteElevationModel dem = new PrecomputedDiscreteElevationModel(file);
+
+        assertEquals(extent(-20, 30, 110, 140), dem.extent());
+        for (int x = -20; x <= 30; ++x) {
+            for (int y = 110; y <= 140; ++y) {
+                assertEquals(source.elevationSample(x, y), dem.elevationSample(x, y), 0);
+                // The neighbours outside of the tile are taken from the source
+                assertEquals(source.slopeSample(x, y), dem.slopeSample(x, y), SLOPE_TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void continuousSlopeIsInterpolatedFromStoredSlopes() throws IOException {
+        Interval2D extent = extent(0, 60, 0, 60);
+        DiscreteElevationModel source = new WavyDEM(extent);
+        File file = folder.newFile("tile.dem");
+        PrecomputedTileConverter.convert(source, extent, file);
+        ContinuousElevationModel expected = new ContinuousElevationModel(source);
+        ContinuousElevationModel actual = new ContinuousElevationModel(
+                new PrecomputedDiscreteElevationModel(file));
+
+        double step = 1 / DiscreteElevationModel.SAMPLES_PER_RADIAN;
+        for (double i = -2.5; i < 62; i += 0.7) {
+            GeoPoint p = new GeoPoint(i * step, (60 - i) * step);
+            assertEquals(expected.elevationAt(p), actual.elevationAt(p), 0);
+            assertEquals(expected.slopeAt(p), actual.slopeAt(p), SLOPE_TOLERANCE);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithOtherByteOrder() throws IOException {
+        File file = folder.newFile("tile.dem");
+        PrecomputedTileConverter.convert(new WavyDEM(extent(0, 3, 0, 3)),
+                extent(0, 3, 0, 3), file);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            byte[] header = new byte[4];
+            f.readFully(header);
+            f.seek(0);
+            for (int i = 3; i >= 0; --i) {
+                f.write(header[i]);
+            }
+        }
+        new PrecomputedDiscreteElevationModel(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTruncatedFile() throws IOException {
+        File file = folder.newFile("tile.dem");
+        PrecomputedTileConverter.convert(new WavyDEM(extent(0, 3, 0, 3)),
+                extent(0, 3, 0, 3), file);
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw")) {
+            f.setLength(f.length() - 4);
+        }
+        new PrecomputedDiscreteElevationModel(file);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void convertFailsOutsideOfSource() throws IOException {
+        PrecomputedTileConverter.convert(new WavyDEM(extent(0, 3, 0, 3)),
+                extent(0, 4, 0, 3), folder.newFile("tile.dem"));
+    }
+}
@@ -0,0 +1,116 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.dem.DiscreteElevationModel.SAMPLES_PER_DEGREE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class SyntheticDiscreteElevationModelTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutTiles() {
+        new SyntheticDiscreteElevationModel(1, 7, 46, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTooManyTiles() {
+        new SyntheticDiscreteElevationModel(1, 7, 46,
+                SyntheticDiscreteElevationModel.MAX_TILES + 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsBeyondTheNorthPole() {
+        new SyntheticDiscreteElevationModel(1, 7, 85, 6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSampleFailsOutsideExtent() {
+        new SyntheticDiscreteElevationModel(1, 7, 46, 1)
+                .elevationSample(7 * SAMPLES_PER_DEGREE - 1, 46 * SAMPLES_PER_DEGREE);
+    }
+
+    @Test
+    public void extentCoversTheTiles() {
+        assertEquals(new Interval2D(
+                new Interval1D(-3 * SAMPLES_PER_DEGREE, 7 * SAMPLES_PER_DEGREE),
+                new Interval1D(42 * SAMPLES_PER_DEGREE, 52 * SAMPLES_PER_DEGREE)),
+                new SyntheticDiscreteElevationModel(1, -3, 42, 10).extent());
+    }
+
+    @Test
+    public void elevationsOnlyDependOnSeedAndIndex() {
+        SyntheticDiscreteElevationModel large = new SyntheticDiscreteElevationModel(42, -3, 42, 10);
+        SyntheticDiscreteElevationModel small = new SyntheticDiscreteElevationModel(42, -1, 45, 1);
+        SyntheticDiscreteElevationModel other = new SyntheticDiscreteElevationModel(43, -1, 45, 1);
+        Random rng = new Random(1);
+        int differences = 0;
+        for (int i = 0; i < 1000; ++i) {
+            int x = -SAMPLES_PER_DEGREE + rng.nextInt(SAMPLES_PER_DEGREE + 1);
+            int y = 45 * SAMPLES_PER_DEGREE + rng.nextInt(SAMPLES_PER_DEGREE + 1);
+            double elevation = small.elevationSample(x, y);
+            assertEquals(elevation, large.elevationSample(x, y), 0);
+            assertEquals(Math.rint(elevation), elevation, 0);
+            assertTrue(0 <= elevation && elevation < SyntheticDiscreteElevationModel.MAX_ELEVATION);
+            if (other.elevationSample(x, y) != elevation)
+                ++differences;
+        }
+        assertTrue(differences > 900);
+    }
+
+    @Test
+    public void reliefIsSmoothButNotFlat() {
+        SyntheticDiscreteElevationModel dem = new SyntheticDiscreteElevationModel(7, 7, 46, 1);
+        int y = 46 * SAMPLES_PER_DEGREE + 1800;
+        double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+        for (int x = 7 * SAMPLES_PER_DEGREE; x < 8 * SAMPLES_PER_DEGREE; ++x) {
+            double elevation = dem.elevationSample(x, y);
+            // Less than 60° between neighbours, about 31 meters apart
+            assertTrue(Math.abs(dem.elevationSample(x + 1, y) - elevation) < 55);
+            min = Math.min(min, elevation);
+            max = Math.max(max, elevation);
+        }
+        assertTrue(max - min > 300);
+    }
+
+    @Test
+    public void hgtNamesFollowTheCorners() {
+        assertEquals("N46E007.hgt", SyntheticDiscreteElevationModel.hgtName(7, 46));
+        assertEquals("S03W120.hgt", SyntheticDiscreteElevationModel.hgtName(-120, -3));
+    }
+
+    @Test
+    public void writtenHgtFilesHaveTheSameElevations() throws Exception {
+        SyntheticDiscreteElevationModel dem = new SyntheticDiscreteElevationModel(5, -1, 46, 1);
+        File directory = folder.getRoot();
+        dem.writeHgtFiles(directory);
+
+        try (HgtDiscreteElevationModel hgt = new HgtDiscreteElevationModel(new File(directory, "N46W001.hgt"))) {
+            assertEquals(dem.extent(), hgt.extent());
+            Random rng = new Random(2);
+            for (int i = 0; i < 1000; ++i) {
+                int x = -SAMPLES_PER_DEGREE + rng.nextInt(SAMPLES_PER_DEGREE + 1);
+                int y = 46 * SAMPLES_PER_DEGREE + rng.nextInt(SAMPLES_PER_DEGREE + 1);
+                assertEquals(dem.elevationSample(x, y), hgt.elevationSample(x, y), 0);
+            }
+            int north = 47 * SAMPLES_PER_DEGREE, west = -SAMPLES_PER_DEGREE;
+            assertEquals(dem.elevationSample(west, north), hgt.elevationSample(west, north), 0);
+            assertEquals(dem.elevationSample(0, 46 * SAMPLES_PER_DEGREE), hgt.elevationSample(0, 46 * SAMPLES_PER_DEGREE), 0);
+        }
+        assertEquals(dem.extent(), new HgtTileCatalog(directory, 1).extent());
+    }
+
+}
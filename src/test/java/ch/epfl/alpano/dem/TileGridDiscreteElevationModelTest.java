@@ -0,0 +1,128 @@
+package ch.epfl.alpano.dem;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class TileGridDiscreteElevationModelTest {
+    private static final int STEP = 10;
+
+    /** A tile whose samples identify it, so that the tile read can be checked */
+    private static final class IdTile implements DiscreteElevationModel {
+        private final Interval2D extent;
+        private final int id;
+
+        IdTile(int column, int row, int id) {
+            this(new Interval2D(
+                    new Interval1D(column * STEP, (column + 1) * STEP),
+                    new Interval1D(row * STEP, (row + 1) * STEP)), id);
+        }
+
+        IdTile(Interval2D extent, int id) {
+            this.extent = extent;
+            this.id = id;
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (!extent.contains(x, y))
+                throw new IllegalArgumentException();
+            return id * 10_000 + x * 100 + y;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static List<IdTile> grid(int columnFrom, int rowFrom, int columns,
+            int rows) {
+        List<IdTile> tiles = new ArrayList<>();
+        for (int r = 0; r < rows; ++r) {
+            for (int c = 0; c < columns; ++c) {
+                tiles.add(new IdTile(columnFrom + c, rowFrom + r, tiles.size()));
+            }
+        }
+        return tiles;
+    }
+
+    @Test
+    public void elevationSampleMatchesUnionOfTiles() {
+        List<IdTile> tiles = grid(-2, 3, 4, 2);
+        DiscreteElevationModel union = tiles.get(0).union(tiles.get(1))
+                .union(tiles.get(2)).union(tiles.get(3))
+                .union(tiles.get(4).union(tiles.get(5)).union(tiles.get(6))
+                        .union(tiles.get(7)));
+        List<IdTile> shuffled = new ArrayList<>(tiles);
+        Collections.reverse(shuffled);
+        DiscreteElevationModel grid = new TileGridDiscreteElevationModel(shuffled);
+
+        assertEquals(union.extent(), grid.extent());
+        Interval2D extent = grid.extent();
+        for (int x = extent.iX().includedFrom(); x <= extent.iX().includedTo(); ++x) {
+            for (int y = extent.iY().includedFrom(); y <= extent.iY().includedTo(); ++y) {
+                assertEquals(union.elevationSample(x, y), grid.elevationSample(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void slopeSampleMatchesUnionOfTiles() {
+        List<IdTile> tiles = grid(0, 0, 2, 2);
+        DiscreteElevationModel union = tiles.get(0).union(tiles.get(1))
+                .union(tiles.get(2).union(tiles.get(3)));
+        DiscreteElevationModel grid = new TileGridDiscreteElevationModel(tiles);
+        Interval2D extent = grid.extent();
+        for (int x = extent.iX().includedFrom(); x <= extent.iX().includedTo(); ++x) {
+            for (int y = extent.iY().includedFrom(); y <= extent.iY().includedTo(); ++y) {
+                assertEquals(union.slopeSample(x, y), grid.slopeSample(x, y), 0);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSampleFailsOutsideOfExtent() {
+        new TileGridDiscreteElevationModel(grid(0, 0, 2, 2))
+                .elevationSample(2 * STEP + 1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithMissingTile() {
+        List<IdTile> tiles = grid(0, 0, 3, 3);
+        tiles.remove(4);
+        new TileGridDiscreteElevationModel(tiles);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithDuplicateTile() {
+        List<IdTile> tiles = grid(0, 0, 2, 2);
+        tiles.set(3, new IdTile(0, 0, 3));
+        new TileGridDiscreteElevationModel(tiles);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithMisalignedTile() {
+        IdTile shifted = new IdTile(new Interval2D(
+                new Interval1D(STEP + 5, 2 * STEP + 5), new Interval1D(0, STEP)), 1);
+        new TileGridDiscreteElevationModel(
+                Arrays.asList(new IdTile(0, 0, 0), shifted));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithEmptyList() {
+        new TileGridDiscreteElevationModel(Collections.emptyList());
+    }
+}
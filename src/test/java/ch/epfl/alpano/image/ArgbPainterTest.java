@@ -0,0 +1,92 @@
+package ch.epfl.alpano.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import org.junit.Test;
+
+public class ArgbPainterTest {
+    private static ChannelPainter constant(float v) {
+        return (x, y) -> v;
+    }
+
+    @Test
+    public void hsbGivesPrimaryColors() {
+        assertEquals(0xFFFF0000, ArgbPainter.hsb(constant(0), constant(1),
+                constant(1), constant(1)).argbAt(0, 0));
+        assertEquals(0xFF00FF00, ArgbPainter.hsb(constant(120), constant(1),
+                constant(1), constant(1)).argbAt(0, 0));
+        assertEquals(0xFF0000FF, ArgbPainter.hsb(constant(-120), constant(1),
+                constant(1), constant(1)).argbAt(0, 0));
+    }
+
+    @Test
+    public void hsbRoundsComponentsLikeJavaFX() {
+        // 0.5 * 255 = 127.5, rounded up
+        assertEquals(0x80808080, ArgbPainter.hsb(constant(42), constant(0),
+                constant(0.5f), constant(0.5f)).argbAt(0, 0));
+        assertEquals(0xFF804000, ArgbPainter.hsb(constant(30), constant(1),
+                constant(0.5f), constant(1)).argbAt(0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hsbFailsWithInvalidSaturation() {
+        ArgbPainter.hsb(constant(0), constant(1.5f), constant(1), constant(1))
+                .argbAt(0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void grayFailsWithInvalidOpacity() {
+        ArgbPainter.gray(constant(0.5f), constant(-1)).argbAt(0, 0);
+    }
+
+    @Test
+    public void grayGivesGrayLevels() {
+        assertEquals(0xFF000000,
+                ArgbPainter.gray(constant(0), constant(1)).argbAt(0, 0));
+        assertEquals(0x00FFFFFF,
+                ArgbPainter.gray(constant(1), constant(0)).argbAt(0, 0));
+    }
+
+    @Test
+    public void paintRowWritesAtOffset() {
+        ArgbPainter p = (x, y) -> 10 * y + x;
+        int[] argb = new int[8];
+        p.paintRow(2, argb, 3, 4);
+        assertArrayEquals(new int[] { 0, 0, 0, 20, 21, 22, 23, 0 }, argb);
+    }
+
+    @Test
+    public void paintRowWritesIntoBuffers() {
+        ArgbPainter p = (x, y) -> 10 * y + x;
+        IntBuffer heap = IntBuffer.allocate(6);
+        heap.position(1);
+        p.paintRow(1, heap, 3);
+        assertEquals(4, heap.position());
+        assertArrayEquals(new int[] { 0, 10, 11, 12, 0, 0 }, heap.array());
+
+        IntBuffer view = ByteBuffer.allocateDirect(12).asIntBuffer();
+        p.paintRow(3, view, 3);
+        assertEquals(3, view.position());
+        assertEquals(32, view.get(2));
+    }
+
+    @Test
+    public void rowsOfDifferentWidthsArePaintedInFull() {
+        ArgbPainter p = ArgbPainter.hsb((x, y) -> 60 * x, constant(1), constant(1), constant(1));
+        for (int width : new int[] { 5, 3, 5 }) {
+            int[] argb = new int[width];
+            p.paintRow(0, argb, 0, width);
+            for (int x = 0; x < width; ++x) {
+                assertEquals(p.argbAt(x, 0), argb[x]);
+            }
+        }
+        ArgbPainter g = ArgbPainter.gray((x, y) -> x / 4f, constant(1));
+        int[] argb = new int[5];
+        g.paintRow(0, argb, 0, 5);
+        assertEquals(0xFFFFFFFF, argb[4]);
+    }
+}
@@ -0,0 +1,71 @@
+package ch.epfl.alpano.image;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ChannelPainterTest {
+    private static final float[] SPECIAL_VALUES = { Float.POSITIVE_INFINITY,
+            Float.NEGATIVE_INFINITY, Float.NaN, 0, -0f, 1 };
+
+    private static ChannelPainter randomPainter(long seed) {
+        Random rng = new Random(seed);
+        float[] values = new float[64 * 32];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i % 17 == 0 ? SPECIAL_VALUES[rng.nextInt(SPECIAL_VALUES.length)]
+                    : (rng.nextFloat() - 0.5f) * 400_000;
+        }
+        return (x, y) -> values[y * 64 + x];
+    }
+
+    private static void assertRowsEqualPoints(ChannelPainter p) {
+        float[] row = new float[64];
+        for (int y = 0; y < 32; ++y) {
+            p.valuesAt(y, row);
+            for (int x = 0; x < row.length; ++x) {
+                assertEquals(Float.floatToIntBits(p.valueAt(x, y)),
+                        Float.floatToIntBits(row[x]));
+            }
+        }
+    }
+
+    @Test
+    public void valuesAtEqualsValueAtForEachCombinator() {
+        ChannelPainter p = randomPainter(1);
+        assertRowsEqualPoints(p.add(3.5f));
+        assertRowsEqualPoints(p.sub(3.5f));
+        assertRowsEqualPoints(p.mul(0.7f));
+        assertRowsEqualPoints(p.div(100000));
+        assertRowsEqualPoints(p.map(Math::sqrt));
+        assertRowsEqualPoints(p.clamped());
+        assertRowsEqualPoints(p.cycling());
+        assertRowsEqualPoints(p.inverted());
+    }
+
+    @Test
+    public void valuesAtEqualsValueAtForComposedPainters() {
+        ChannelPainter distance = randomPainter(2);
+        ChannelPainter slope = randomPainter(3);
+        assertRowsEqualPoints(distance.div(100000).cycling().mul(360));
+        assertRowsEqualPoints(distance.div(200000).clamped().inverted());
+        assertRowsEqualPoints(slope.mul(2).div((float) Math.PI).inverted()
+                .mul(0.7f).add(0.3f));
+    }
+
+    @Test
+    public void hsbPaintRowEqualsArgbAt() {
+        ChannelPainter distance = randomPainter(4);
+        ArgbPainter p = ArgbPainter.hsb(distance.div(100000).cycling().mul(360),
+                distance.div(200000).clamped().inverted(),
+                randomPainter(5).clamped(), (x, y) -> 1);
+        int[] row = new int[64];
+        for (int y = 0; y < 32; ++y) {
+            p.paintRow(y, row, 0, 64);
+            for (int x = 0; x < 64; ++x) {
+                assertEquals(p.argbAt(x, y), row[x]);
+            }
+        }
+    }
+}
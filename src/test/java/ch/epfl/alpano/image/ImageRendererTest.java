@@ -0,0 +1,73 @@
+package ch.epfl.alpano.image;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ImageRendererTest {
+    private static final ArgbPainter PAINTER = (x, y) -> 1000 * y + x;
+
+    @Test
+    public void renderPaintsEveryPixel() {
+        int[] argb = new ImageRenderer().render(PAINTER, 7, 5);
+        assertEquals(35, argb.length);
+        for (int y = 0; y < 5; ++y) {
+            for (int x = 0; x < 7; ++x) {
+                assertEquals(1000 * y + x, argb[y * 7 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void parallelRenderingGivesSameResultAsSequentialOne() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            int[] expected = new ImageRenderer().render(PAINTER, 123, 97);
+            int[] argb = new int[123 * 97];
+            new ImageRenderer(pool).render(PAINTER, 123, 97, argb);
+            assertArrayEquals(expected, argb);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void renderFailsWithTooSmallArray() {
+        new ImageRenderer().render(PAINTER, 7, 5, new int[34]);
+    }
+
+    @Test
+    public void downsampleAveragesBlocks() {
+        int[] argb = {
+                0xFF000000, 0xFF000002, 0x00FFFFFF, 0x00FFFFFF,
+                0xFF000004, 0xFF000001, 0x00FFFFFF, 0xFFFFFFFF };
+        int[] reduced = new ImageRenderer().downsample(argb, 4, 2, 2);
+        assertArrayEquals(new int[] { 0xFF000002, 0x40FFFFFF }, reduced);
+    }
+
+    @Test
+    public void parallelDownsampleGivesSameResultAsSequentialOne() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ArgbPainter painter = (x, y) -> 0xFF000000 | (x * 7919 + y * 104729) & 0xFFFFFF;
+            int[] argb = new ImageRenderer().render(painter, 120, 96);
+            assertArrayEquals(new ImageRenderer().downsample(argb, 120, 96, 4),
+                    new ImageRenderer(pool).downsample(argb, 120, 96, 4));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downsampleFailsWithSizeNotMultipleOfFactor() {
+        new ImageRenderer().downsample(new int[30], 6, 5, 2);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullPool() {
+        new ImageRenderer(null);
+    }
+}